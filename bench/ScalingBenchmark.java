@@ -0,0 +1,145 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/*
+    End to end scaling benchmark of Simulator over vehicle density, road length and worker threads.
+    Usage: java ScalingBenchmark <result file> [stop time ms] [densities] [segment counts] [thread counts] [engine]
+    where the lists are comma separated, e.g. java ScalingBenchmark scaling.tsv 2000 8,24,64 25 1,2,4
+    Every run reports simulated ms per wall second, peak heap, GC time and process CPU time
+    as one tab separated row.
+    Peak heap is the most heap in use right before a collection of the run or at its end,
+    heap only grows between collections so this is the peak of the run.
+*/
+public class ScalingBenchmark {
+    static int[] parseList(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    static int[] defaultThreadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<Integer>();
+        for (int count = 1; count < cores; count *= 2) counts.add(count);
+        counts.add(cores);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // CPU time of every thread of the process, ended ones included
+    static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    static long gcMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    static final AtomicLong peakHeapBytes = new AtomicLong();
+    static volatile long runStartUptime; // Collections that started before are not part of the run
+
+    // Sums of the heap pools, the per pool peaks are reached at different times and do not add up
+    static void watchHeap() {
+        Set<String> heapPools = new HashSet<String>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool.getName());
+        }
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+                if (info.getStartTime() < runStartUptime) return;
+                long used = 0;
+                for (Map.Entry<String, MemoryUsage> pool : info.getMemoryUsageBeforeGc().entrySet()) {
+                    if (heapPools.contains(pool.getKey())) used += pool.getValue().getUsed();
+                }
+                peakHeapBytes.accumulateAndGet(used, Math::max);
+            }, null, null);
+        }
+    }
+
+    static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static String run(Config config, int vehiclesPerSegment) throws IOException {
+        System.gc();
+        runStartUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        peakHeapBytes.set(heapUsedBytes());
+        long gcStart = gcMillis();
+        long cpuStart = processCpuNanos();
+        long wallStart = System.nanoTime();
+
+        Simulator simulator;
+        try (Logger log = new Logger(config, OutputStream.nullOutputStream())) {
+            simulator = new Simulator(config, vehiclesPerSegment, 60, log, null);
+            simulator.run();
+        }
+
+        long wallNanos = System.nanoTime() - wallStart;
+        long cpuEnd = processCpuNanos();
+        long gcTime = gcMillis() - gcStart;
+        long peakHeap = peakHeapBytes.accumulateAndGet(heapUsedBytes(), Math::max);
+        return String.format("%s\t%d\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%d\t%d\t%d\n",
+            config.ENGINE,
+            vehiclesPerSegment,
+            simulator.segmentCount,
+            simulator.totalVehicleCount,
+            config.WORKER_THREAD_COUNT,
+            config.STOP_TIME,
+            wallNanos / 1e6,
+            config.STOP_TIME / (wallNanos / 1e9),
+            peakHeap / (1 << 20),
+            gcTime,
+            (cpuEnd - cpuStart) / 1_000_000
+        );
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ScalingBenchmark <result file> [stop time ms] [densities] [segment counts] [thread counts] [engine]");
+            System.exit(1);
+        }
+        int stopTime = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int[] densities = (args.length > 2) ? parseList(args[2]) : new int[] {8, 24, 64, 128, 200};
+        int[] segmentCounts = (args.length > 3) ? parseList(args[3]) : new int[] {10, 25, 50};
+        int[] threadCounts = (args.length > 4) ? parseList(args[4]) : defaultThreadCounts();
+
+        Config baseConfig = new Config();
+        baseConfig.LOG_LEVEL = Config.LOG_LEVEL_TYPE.OFF;
+        baseConfig.METRICS_SAMPLE_INTERVAL = 0;
+        baseConfig.STOP_TIME = stopTime;
+        if (args.length > 5) baseConfig.ENGINE = Config.ENGINE_TYPE.valueOf(args[5]);
+
+        watchHeap();
+        try (PrintStream out = new PrintStream(new FileOutputStream(args[0]))) {
+            out.print("Engine\tVehicle Density\tSegment Count\tVehicle Count\tWorker Threads\tSimulated Time (ms)\tWall Time (ms)\tSimulated ms per Wall Second\tPeak Heap (MiB)\tGC Time (ms)\tCPU Time (ms)\n");
+            // Compile the hot paths before anything is measured
+            Config warmUp = baseConfig.copy();
+            warmUp.ROAD_END = 10 * warmUp.SEGMENT_LENGTH;
+            run(warmUp, densities[0]);
+
+            for (int segmentCount : segmentCounts) {
+                for (int density : densities) {
+                    for (int threadCount : threadCounts) {
+                        Config config = baseConfig.copy();
+                        config.ROAD_END = segmentCount * config.SEGMENT_LENGTH;
+                        config.WORKER_THREAD_COUNT = threadCount;
+                        String row = run(config, density);
+                        out.print(row);
+                        out.flush();
+                        System.err.print(row);
+                    }
+                }
+            }
+        }
+        System.exit(0);
+    }
+}
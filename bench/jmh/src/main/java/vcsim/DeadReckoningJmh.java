@@ -0,0 +1,45 @@
+package vcsim;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    Dead reckoning of every vehicle, the scalar loop against the Vector API pass.
+    Forks run with the jdk.incubator.vector module so that both passes are available.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class DeadReckoningJmh {
+    @Param({"1600", "16000"})
+    int vehicleCount;
+    @Param({"scalar", "vector"})
+    String pass;
+
+    VehicleKinematics kinematics;
+    VehicleKinematics.DeadReckoning deadReckoning;
+    int time;
+
+    @Setup
+    public void setUp() {
+        Config config = new Config();
+        SplittableRandom random = new SplittableRandom(config.RANDOM_SEED);
+        kinematics = new VehicleKinematics(config, vehicleCount);
+        for (int i = 0; i < vehicleCount; i++) {
+            kinematics.add(random.nextFloat() * config.ROAD_END, 16.7f, random.nextBoolean() ? 1 : -1, random.split(), null);
+        }
+        System.arraycopy(kinematics.positions, 0, kinematics.newPositions, 0, vehicleCount);
+        deadReckoning = pass.equals("vector") ? VehicleKinematics.VECTOR : VehicleKinematics.SCALAR;
+        if (deadReckoning == null) throw new IllegalStateException("Vector API pass not available");
+        time = 0;
+    }
+
+    @Benchmark
+    public void move() {
+        deadReckoning.move(kinematics, ++time);
+    }
+}
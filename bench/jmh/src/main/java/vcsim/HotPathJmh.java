@@ -0,0 +1,260 @@
+package vcsim;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+    Microbenchmarks of the simulator hot paths, each measured in isolation.
+    Run with -prof gc for the bytes allocated per operation next to the time.
+    interval is one interval of every vehicle and RSU on one thread, begin and end included.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathJmh {
+
+    static Simulator newSimulator(int vehiclesPerSegment) {
+        Config config = new Config();
+        config.LOG_LEVEL = Config.LOG_LEVEL_TYPE.OFF;
+        config.METRICS_SAMPLE_INTERVAL = 0;
+        Logger log = new Logger(config, OutputStream.nullOutputStream());
+        return new Simulator(config, vehiclesPerSegment, 60, log, null);
+    }
+
+    static float segmentMiddle(Config config, int segmentId) {
+        return (segmentId + 0.5f) * config.SEGMENT_LENGTH;
+    }
+
+    static Cloud newCloud(Simulator simulator, int memberCount, SplittableRandom random) {
+        Config config = simulator.config;
+        Cloud cloud = new Cloud(simulator, 0, 1, false, 0);
+        for (int id = 1; id <= memberCount; id++) {
+            int resources = config.WORK_CHUNK_SIZE * (random.nextInt(config.APPLICATION_TYPE_COUNT) + 1);
+            cloud.addMember(id, resources, 10 + 15 * random.nextFloat());
+        }
+        return cloud;
+    }
+
+    static Packet newRequest(Simulator simulator, int requestorId, int resourcesNeeded) {
+        return new Packet(simulator, Config.PACKET_TYPE.RJOIN, requestorId, 0, 20.0f, 0, resourcesNeeded, simulator.config.WORK_CHUNK_SIZE);
+    }
+
+    // A receiver catching up on one segment log of logSize packets, and on both neighbouring
+    // logs when withNeighbours is set, of which it only takes RLEAVE's
+    @State(Scope.Thread)
+    public static class ChannelLog {
+        @Param({"16", "256", "4096"})
+        int logSize;
+        @Param({"false", "true"})
+        boolean withNeighbours;
+
+        Simulator simulator;
+        Channel channel;
+        Channel.ReadCursor cursor;
+        Queue<Packet> receiveQueue;
+        float position;
+
+        @Setup
+        public void setUp() {
+            simulator = newSimulator(8);
+            Config config = simulator.config;
+            channel = new Channel(config, 0, null);
+            Config.PACKET_TYPE[] types = Config.PACKET_TYPE.values();
+            int segmentId = channel.segmentCount / 2;
+            for (int s = segmentId - 1; s <= segmentId + 1; s++) {
+                if (s != segmentId && !withNeighbours) continue;
+                for (int i = 0; i < logSize; i++) {
+                    Packet packet = new Packet(simulator, types[i % types.length], i + 1, 0, 0);
+                    channel.transmitPacket(packet, 0, segmentMiddle(config, s));
+                }
+            }
+            channel.publishStagedPackets();
+            cursor = channel.newReadCursor();
+            receiveQueue = new ArrayDeque<Packet>();
+            position = segmentMiddle(config, segmentId);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            simulator.log.close();
+        }
+    }
+
+    @Benchmark
+    public Packet receivePackets(ChannelLog state) {
+        state.cursor.segmentId = -1; // Read the whole log again
+        state.channel.receivePackets(Integer.MAX_VALUE, state.cursor, 1, state.position, state.receiveQueue);
+        Packet first = state.receiveQueue.peek();
+        state.receiveQueue.clear();
+        return first;
+    }
+
+    @State(Scope.Thread)
+    public static class Contention {
+        @Param({"8", "64", "512"})
+        int contenderCount;
+
+        Channel channel;
+        float[] positions;
+        int[] priorities;
+        float[] probes;
+
+        @Setup
+        public void setUp() {
+            Config config = new Config();
+            channel = new Channel(config, 0, null);
+            SplittableRandom random = new SplittableRandom(config.RANDOM_SEED);
+            positions = new float[contenderCount];
+            priorities = new int[contenderCount];
+            for (int i = 0; i < contenderCount; i++) {
+                positions[i] = random.nextFloat() * config.ROAD_END;
+                priorities[i] = random.nextInt();
+            }
+            probes = new float[1024];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = random.nextFloat() * config.ROAD_END;
+            }
+            declareAll();
+            channel.resolveContention();
+        }
+
+        void declareAll() {
+            for (int i = 0; i < contenderCount; i++) {
+                channel.declareTransmitIntent(i + 1, positions[i], priorities[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void resolveContention(Contention state) {
+        state.declareAll();
+        state.channel.resolveContention();
+    }
+
+    // All 1024 probes against the contention resolved in set up
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public int isFree(Contention state) {
+        int free = 0;
+        for (float probe : state.probes) {
+            if (state.channel.isFree(probe)) free++;
+        }
+        return free;
+    }
+
+    // A request is queued, allocated over the members and completed, which leaves the cloud as it was
+    @State(Scope.Thread)
+    public static class CloudCycle {
+        @Param({"8", "64", "512"})
+        int memberCount;
+
+        Simulator simulator;
+        Cloud cloud;
+        Packet request;
+
+        @Setup
+        public void setUp() {
+            simulator = newSimulator(8);
+            cloud = newCloud(simulator, memberCount, new SplittableRandom(simulator.config.RANDOM_SEED));
+            request = newRequest(simulator, 1, simulator.config.APPLICATION_REQUIREMENT[0]);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            simulator.log.close();
+        }
+    }
+
+    @Benchmark
+    public void processPendingRequestsAndMarkAsDone(CloudCycle state) {
+        Cloud cloud = state.cloud;
+        cloud.addNewRequest(state.request);
+        WorkAssignment workAssignment = cloud.processPendingRequests();
+        for (int i = 0; i < workAssignment.size(); i++) {
+            cloud.markAsDone(workAssignment.getReqId(i), workAssignment.getMemberId(i), workAssignment.getAmount(i));
+        }
+    }
+
+    // A fresh cloud for every call, its set up is not measured
+    @State(Scope.Thread)
+    public static class FreshCloud {
+        @Param({"8", "64", "512"})
+        int memberCount;
+
+        Simulator simulator;
+        SplittableRandom random;
+        Cloud cloud;
+        int leavingId;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() {
+            simulator = newSimulator(8);
+            random = new SplittableRandom(simulator.config.RANDOM_SEED);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUpInvocation() {
+            cloud = newCloud(simulator, memberCount, random);
+            cloud.addNewRequest(newRequest(simulator, 1, simulator.config.APPLICATION_REQUIREMENT[0]));
+            leavingId = cloud.processPendingRequests().getMemberId(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            simulator.log.close();
+        }
+    }
+
+    // A member with work leaves, its share is allocated to the others
+    @Benchmark
+    public void reassignWork(FreshCloud state, Blackhole blackhole) {
+        blackhole.consume(state.cloud.reassignWork(state.leavingId));
+    }
+
+    @Benchmark
+    public void electLeader(FreshCloud state) {
+        state.cloud.electLeader();
+    }
+
+    // One interval of every node on the benchmark thread
+    @State(Scope.Thread)
+    public static class Road {
+        @Param({"8", "24", "64"})
+        int vehiclesPerSegment;
+
+        Simulator simulator;
+
+        @Setup
+        public void setUp() throws Exception {
+            simulator = newSimulator(vehiclesPerSegment);
+            simulator.stopTime = Integer.MAX_VALUE;
+            // Get past the start up, when no clouds exist yet
+            for (int i = 0; i < 2000; i++) {
+                tick();
+            }
+        }
+
+        void tick() throws Exception {
+            simulator.beginInterval();
+            for (Node node : simulator.nodes) {
+                node.call();
+            }
+            simulator.endInterval();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            simulator.log.close();
+        }
+    }
+
+    @Benchmark
+    public void interval(Road state) throws Exception {
+        state.tick();
+    }
+}
@@ -0,0 +1,36 @@
+import jdk.incubator.vector.*;
+
+// Dead reckoning of VehicleKinematics through the Vector API, a lane per vehicle.
+// Only part of the vector build, compiled and run with --add-modules jdk.incubator.vector.
+// It does the same float operations in the same order as VehicleKinematics.moveScalar, so
+// positions and directions come out bit for bit the same, and leaves the tail to it.
+public class VectorDeadReckoning implements VehicleKinematics.DeadReckoning {
+    static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED; // As many lanes as FLOATS
+
+    public void move(VehicleKinematics kinematics, int currentTime) {
+        float roadStart = kinematics.config.ROAD_START;
+        float roadEnd = kinematics.config.ROAD_END;
+        FloatVector roadStarts = FloatVector.broadcast(FLOATS, roadStart);
+        FloatVector reflectedEnds = FloatVector.broadcast(FLOATS, roadEnd - 1);
+        IntVector now = IntVector.broadcast(INTS, currentTime);
+        float[] positions = kinematics.newPositions;
+        float[] speeds = kinematics.speeds;
+        int[] directions = kinematics.directions;
+        int[] lastUpdated = kinematics.lastUpdated;
+        int bound = FLOATS.loopBound(kinematics.count);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            IntVector direction = IntVector.fromArray(INTS, directions, i);
+            FloatVector elapsed = (FloatVector) now.sub(IntVector.fromArray(INTS, lastUpdated, i)).convert(VectorOperators.I2F, 0);
+            FloatVector velocity = ((FloatVector) direction.convert(VectorOperators.I2F, 0)).mul(FloatVector.fromArray(FLOATS, speeds, i));
+            FloatVector position = FloatVector.fromArray(FLOATS, positions, i).add(velocity.mul(elapsed).div(1000));
+            VectorMask<Float> beyondEnd = position.compare(VectorOperators.GT, roadEnd);
+            VectorMask<Float> beforeStart = position.compare(VectorOperators.LT, roadStart);
+            position.blend(roadStarts, beforeStart).blend(reflectedEnds, beyondEnd).intoArray(positions, i);
+            direction.blend(1, beforeStart.cast(INTS)).blend(-1, beyondEnd.cast(INTS)).intoArray(directions, i);
+            now.intoArray(lastUpdated, i);
+        }
+        kinematics.moveScalar(i, kinematics.count, currentTime);
+    }
+}
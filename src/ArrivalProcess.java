@@ -0,0 +1,26 @@
+import java.util.*;
+
+// Request arrivals of one vehicle. The next arrival is sampled ahead of time so
+// that a vehicle does no sampling in intervals without a request.
+public interface ArrivalProcess {
+    // Interval of the next arrival
+    int getArrivalTime();
+
+    // Application requested by the next arrival
+    int getAppId();
+
+    // Sample the first arrival after time
+    void advance(int time);
+
+    static ArrivalProcess create(Config config, SplittableRandom random) {
+        switch (config.ARRIVAL_PROCESS) {
+            case PER_APP_RATE:
+                return new PerAppArrivalProcess(config, random);
+            case BURSTY:
+                return new BurstyArrivalProcess(config, random);
+            case GEOMETRIC:
+            default:
+                return new GeometricArrivalProcess(config, random);
+        }
+    }
+}
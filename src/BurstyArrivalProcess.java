@@ -0,0 +1,60 @@
+import java.util.*;
+
+// Two state Markov modulated Poisson process. The vehicle alternates between a calm
+// and a burst state with exponential sojourn times of mean BURSTY_MEAN_SOJOURN ms,
+// requesting at BURSTY_REQUEST_RATE per ms in each, for uniformly chosen applications.
+public class BurstyArrivalProcess implements ArrivalProcess {
+    Config config;
+    SplittableRandom random;
+    int state;
+    double clock;        // Continuous time of the process, in ms
+    double stateEndTime;
+    int arrivalTime;
+    int appId;
+
+    public BurstyArrivalProcess(Config config, SplittableRandom random) {
+        this.config = config;
+        this.random = random;
+        this.state = 0;
+        this.clock = 0;
+        this.stateEndTime = sampleExponential(1.0 / config.BURSTY_MEAN_SOJOURN[state]);
+        advance(-1);
+    }
+
+    private double sampleExponential(double rate) {
+        return -Math.log(1.0 - random.nextDouble()) / rate;
+    }
+
+    public int getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public int getAppId() {
+        return appId;
+    }
+
+    public void advance(int time) {
+        // Arrivals that fell while the vehicle could not take them are skipped,
+        // the modulating state keeps evolving from where it was. Arrivals within
+        // the interval just taken are merged into its request, as in the other processes.
+        clock = Math.max(clock, time);
+        while (stateEndTime <= clock) {
+            state = 1 - state;
+            stateEndTime += sampleExponential(1.0 / config.BURSTY_MEAN_SOJOURN[state]);
+        }
+        while (true) {
+            double arrival = clock + sampleExponential(config.BURSTY_REQUEST_RATE[state]);
+            if (arrival >= stateEndTime) {
+                clock = stateEndTime;
+                state = 1 - state;
+                stateEndTime = clock + sampleExponential(1.0 / config.BURSTY_MEAN_SOJOURN[state]);
+            }
+            else {
+                clock = arrival;
+                if (arrival > time) break;
+            }
+        }
+        arrivalTime = (int) Math.min(Math.ceil(clock), Integer.MAX_VALUE / 2);
+        appId = random.nextInt(config.APPLICATION_TYPE_COUNT);
+    }
+}
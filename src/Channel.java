@@ -1,79 +1,196 @@
 import java.util.*;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.*;
 
 public class Channel {
     int id;
-    List<Packet> packetQueue;
-    ReadWriteLock packetQueueLock;
+    Config config;
+    TraceRecorder trace; // Null unless tracing
+    int segmentCount;
+    List<PacketLog> segmentQueues; // One append-only packet log per segment
+    static final int ALL_TYPES = -1;
+    static final int RLEAVE_ONLY = PacketLog.typeMask(Config.PACKET_TYPE.RLEAVE);
+    // Packets transmitted in the current interval, one single-writer buffer per worker thread.
+    // They are published to segmentQueues at the interval boundary, so readers never race writers.
+    ThreadLocal<List<Packet>> stagedPackets;
+    Queue<List<Packet>> stagingBuffers;
+    List<Packet> publishBatch;
+    boolean[] publishedSegments; // Segments that received packets in the last publication
 
-    public class Transmitter {
-        int id;
-        float position;
+    // Transmit intents of the current interval, declared by entities whose backoff has expired
+    int contenderCount;
+    int[] contenderIds;
+    int[] contenderSegments;
+    long[] contenderOrder; // (priority, contender index) packed for a primitive sort
+    // Outcome of contention, vehicle ids start from 1 and RSU ids from -1 so 0 means no winner
+    int[] segmentWinner;
+    boolean[] segmentBusy;
 
-        public Transmitter(int id, float position) {
-            this.id = id;
-            this.position = position;
+    // Read position of an entity in each segment log, owned by that entity
+    public class ReadCursor {
+        int segmentId;
+        int[] readTillIndex;
+
+        public ReadCursor() {
+            this.segmentId = -1;
+            this.readTillIndex = new int[segmentCount];
         }
     }
-
-    List<Transmitter> transmitterPositions;
-    Lock transmitterPositionsLock;
+    List<ReadCursor> readCursors;
+    final int[] watermarks; // Scratch space of reclaimConsumedPackets, lowest read index of each segment
     
-    public Channel(int id) {
+    public Channel(Config config, int id, TraceRecorder trace) {
         this.id = id;
-        packetQueue = new ArrayList<Packet>();
-        packetQueueLock = new ReentrantReadWriteLock(Config.useFair);
-        transmitterPositions = new LinkedList<Transmitter>();
-        transmitterPositionsLock = new ReentrantLock(Config.useFair);
+        this.config = config;
+        this.trace = trace;
+        segmentCount = (int) Math.ceil(config.ROAD_END / config.SEGMENT_LENGTH);
+        segmentQueues = new ArrayList<PacketLog>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segmentQueues.add(new PacketLog(config.PACKET_LOG_CHUNK_SIZE));
+        }
+        readCursors = new ArrayList<ReadCursor>();
+        stagingBuffers = new ConcurrentLinkedQueue<List<Packet>>();
+        stagedPackets = ThreadLocal.withInitial(() -> {
+            List<Packet> buffer = new ArrayList<Packet>();
+            stagingBuffers.add(buffer);
+            return buffer;
+        });
+        publishBatch = new ArrayList<Packet>();
+        publishedSegments = new boolean[segmentCount];
+        contenderCount = 0;
+        contenderIds = new int[64];
+        contenderSegments = new int[64];
+        contenderOrder = new long[64];
+        segmentWinner = new int[segmentCount];
+        segmentBusy = new boolean[segmentCount];
+        watermarks = new int[segmentCount];
+    }
+
+    public ReadCursor newReadCursor() {
+        ReadCursor cursor = new ReadCursor();
+        readCursors.add(cursor);
+        return cursor;
+    }
+
+    public int getSegmentId(float position) {
+        int segmentId = (int) (position / config.SEGMENT_LENGTH);
+        return Math.max(0, Math.min(segmentCount - 1, segmentId));
+    }
+
+    // Intent phase, called for every contending entity before any entity runs.
+    // Must not be called concurrently.
+    public void declareTransmitIntent(int id, float position, int priority) {
+        if (contenderCount == contenderIds.length) {
+            contenderIds = Arrays.copyOf(contenderIds, 2 * contenderCount);
+            contenderSegments = Arrays.copyOf(contenderSegments, 2 * contenderCount);
+            contenderOrder = Arrays.copyOf(contenderOrder, 2 * contenderCount);
+        }
+        contenderIds[contenderCount] = id;
+        contenderSegments[contenderCount] = getSegmentId(position);
+        contenderOrder[contenderCount] = ((long) priority << 32) | contenderCount;
+        contenderCount++;
     }
 
-    public boolean isFree(int id, float position) {
-        transmitterPositionsLock.lock();
-        for (Transmitter t : transmitterPositions) {
-            int segment1 = (int) (position / Config.SEGMENT_LENGTH);
-            int segment2 = (int) (t.position / Config.SEGMENT_LENGTH);
-            if (Math.abs(segment1 - segment2) <= 1) {
-                transmitterPositionsLock.unlock();
-                return false;        
+    // Resolve phase, settles all contention of the interval in one pass.
+    // Contenders are visited in order of their random priority and one wins
+    // if no earlier winner is transmitting in its own or an adjacent segment.
+    public void resolveContention() {
+        Arrays.fill(segmentWinner, 0);
+        Arrays.fill(segmentBusy, false);
+        Arrays.sort(contenderOrder, 0, contenderCount);
+        for (int i = 0; i < contenderCount; i++) {
+            int contender = (int) contenderOrder[i];
+            int segmentId = contenderSegments[contender];
+            if (segmentBusy[segmentId]) continue;
+            segmentWinner[segmentId] = contenderIds[contender];
+            for (int s = Math.max(0, segmentId - 1); s <= Math.min(segmentCount - 1, segmentId + 1); s++) {
+                segmentBusy[s] = true;
             }
         }
-        transmitterPositions.add(new Transmitter(id, position));
-        transmitterPositionsLock.unlock();
-        return true;
+        contenderCount = 0;
+    }
+
+    public boolean hasWonContention(int id, float position) {
+        return segmentWinner[getSegmentId(position)] == id;
+    }
+
+    // Channel is free at position if no one transmits within interference range in this interval
+    public boolean isFree(float position) {
+        return !segmentBusy[getSegmentId(position)];
     }
 
     public void transmitPacket(Packet packet, int currentTime, float currentPosition) {
-        packetQueueLock.writeLock().lock();
-        packetQueue.add(packet);
+        stagedPackets.get().add(packet);
         packet.recordTransmission(currentTime, currentPosition);
-        packetQueueLock.writeLock().unlock();
+        if (trace != null) trace.recordTransmit(packet, currentTime, getSegmentId(currentPosition));
     }
 
-    public int receivePackets(int receiverId, int readTillIndex, int currentTime, float position, Queue<Packet> receiveQueue) {
-        packetQueueLock.readLock().lock();
-        int newPacketCount = packetQueue.size() - readTillIndex;
-        while (readTillIndex < packetQueue.size()) {
-            Packet packet = packetQueue.get(readTillIndex);
+    // Called between intervals, when no entity is running
+    public void publishStagedPackets() {
+        for (List<Packet> buffer : stagingBuffers) {
+            publishBatch.addAll(buffer);
+            buffer.clear();
+        }
+        // Merge order must not depend on which worker ran which entity
+        publishBatch.sort((x, y) -> Integer.compare(x.senderId, y.senderId));
+        Arrays.fill(publishedSegments, false);
+        for (Packet packet : publishBatch) {
+            int segmentId = getSegmentId(packet.position);
+            segmentQueues.get(segmentId).add(packet);
+            publishedSegments[segmentId] = true;
+        }
+        publishBatch.clear();
+    }
 
-            int segment1 = (int) (position / Config.SEGMENT_LENGTH);
-            int segment2 = (int) (packet.position / Config.SEGMENT_LENGTH);
-            int diff = 0;
-            if (packet.type == Config.PACKET_TYPE.RLEAVE) diff = 1;
+    // Index of the first packet in segmentQueue transmitted at or after time
+    private int firstIndexTransmittedAt(PacketLog segmentQueue, int time) {
+        int low = segmentQueue.firstIndex(), high = segmentQueue.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segmentQueue.getTransmitTime(mid) < time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
 
-            if (packet.senderId != receiverId && Math.abs(segment1 - segment2) <= diff) {
+    public void receivePackets(int receiverId, ReadCursor cursor, int currentTime, float position, Queue<Packet> receiveQueue) {
+        int segmentId = getSegmentId(position);
+        // Only RLEAVE reaches beyond the receiver's own segment, and only by one segment
+        for (int s = Math.max(0, segmentId - 1); s <= Math.min(segmentCount - 1, segmentId + 1); s++) {
+            PacketLog segmentQueue = segmentQueues.get(s);
+            if (cursor.segmentId < 0 || Math.abs(s - cursor.segmentId) > 1) {
+                // Segment has just come into range, start from the last published interval
+                cursor.readTillIndex[s] = firstIndexTransmittedAt(segmentQueue, currentTime - 1);
+            }
+            int typeMask = (s == segmentId) ? ALL_TYPES : RLEAVE_ONLY;
+            int size = segmentQueue.size();
+            int readIndex = cursor.readTillIndex[s];
+            while ((readIndex = segmentQueue.nextMatch(readIndex, receiverId, typeMask)) < size) {
+                Packet packet = segmentQueue.get(readIndex);
                 receiveQueue.add(packet);
                 packet.recordReception(currentTime);
+                if (trace != null) trace.recordReceive(packet, currentTime, receiverId);
+                readIndex++;
             }
-            readTillIndex++;
+            cursor.readTillIndex[s] = size;
         }
-        packetQueueLock.readLock().unlock();
-        return newPacketCount;
+        cursor.segmentId = segmentId;
     }
 
-    public void clearTransmitterPositions() {
-        transmitterPositionsLock.lock();
-        transmitterPositions.clear();
-        transmitterPositionsLock.unlock();
-        return;
+    // Drop the prefix of every segment log that all entities in range have read.
+    // Entities out of range do not hold a segment back, they skip its backlog on arrival.
+    // Called between intervals, when no entity is running.
+    public void reclaimConsumedPackets() {
+        for (int s = 0; s < segmentCount; s++) {
+            watermarks[s] = segmentQueues.get(s).size();
+        }
+        for (ReadCursor cursor : readCursors) {
+            if (cursor.segmentId < 0) continue;
+            for (int s = Math.max(0, cursor.segmentId - 1); s <= Math.min(segmentCount - 1, cursor.segmentId + 1); s++) {
+                watermarks[s] = Math.min(watermarks[s], cursor.readTillIndex[s]);
+            }
+        }
+        for (int s = 0; s < segmentCount; s++) {
+            segmentQueues.get(s).trim(watermarks[s]);
+        }
     }
-}
\ No newline at end of file
+}
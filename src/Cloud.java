@@ -8,7 +8,10 @@ public class Cloud {
     int requestIdCounter;
     int initialRequestTime;
     int resourceQuotaMetTime;
-    Map<Integer, Map<Integer,Integer>> globalWorkStore;
+    WorkStore workStore; // Outstanding work of in-flight requests
+    private int[] leftReqIds; // Scratch space for reassignWork
+    private int[] leftWork;
+    private WorkAssignment.Builder assignmentBuilder; // Entries of the next PSTART payload
     
     private class Request {
         int id;
@@ -21,50 +24,11 @@ public class Cloud {
     }   
     Queue<Request> pendingRequests;
     
-    private class Pair {
-        int first;
-        int second;
-
-        public Pair(int a, int b) {
-            first = a;
-            second = b;
-        }
-
-        @Override
-        public boolean equals(Object p) {
-            System.out.println("In equals");
-            if (p instanceof Pair) {
-                Pair pp = (Pair) p;
-                return pp.first == first && pp.second == second;
-            }
-            else {
-                return false;
-            }
-        }
-    }
-    TreeSet<Pair> freeResourcesSet;
-    Map<Integer,Integer> freeResourcesMap; // Acts as member list
+    ResourceHeap freeResources; // Acts as member list
     int totalFreeResource;
 
-    class Leader {
-        int id;
-        float speed;
-        float LQI;
-
-        public Leader(int id, float speed) {
-            this.id = id;
-            this.speed = speed;
-            this.LQI = 0;
-        }
-    }
-    List<Leader> futureLeaders;
-    class SortByLQI implements Comparator<Leader> {
-        public int compare(Leader x, Leader y) {
-            if (x.LQI < y.LQI) return -1;
-            else if (x.LQI == y.LQI) return 0;
-            return 1;    
-        }
-    }
+    LeaderRanking leaderRanking; // Members ranked by LQI
+    int nextLeaderId; // Best ranked member other than the leader, kept current on every change
 
     public Cloud(Simulator simulatorRef, int appId, int parentId, boolean formedByRSU, int initialRequestTime) {
         this.appId = appId;
@@ -74,23 +38,15 @@ public class Cloud {
         this.requestIdCounter = 0;
         this.initialRequestTime = initialRequestTime; 
         this.resourceQuotaMetTime = Integer.MAX_VALUE;
-        this.globalWorkStore = new HashMap<Integer, Map<Integer,Integer>>();
+        this.workStore = new WorkStore();
+        this.leftReqIds = new int[4];
+        this.leftWork = new int[4];
+        this.assignmentBuilder = new WorkAssignment.Builder();
         this.pendingRequests = new LinkedList<>();
-        this.freeResourcesSet = new TreeSet<Pair>(new Comparator<Pair>() {
-            @Override
-            public int compare(Pair x, Pair y) {
-                if (x.first == y.first) {
-                    return x.second - y.second;
-                }
-                else if (x.first < y.first) {
-                    return 1;
-                }
-                else return -1;
-            }
-        });
-        this.freeResourcesMap = new HashMap<Integer,Integer>();
+        this.freeResources = new ResourceHeap();
         this.totalFreeResource = 0;
-        this.futureLeaders = new LinkedList<>();
+        this.leaderRanking = new LeaderRanking();
+        this.nextLeaderId = LeaderRanking.NO_MEMBER;
     }
 
     private void add(int resourceAmount) {
@@ -105,50 +61,42 @@ public class Cloud {
     }
 
     public boolean isMember(int id) {
-        return freeResourcesMap.containsKey(id);
+        return freeResources.contains(id);
     }
 
     public void addMember(int id, int resourceLimit, float velocity) {
         assert(resourceLimit > 0);
-        if (freeResourcesMap.containsKey(id)) {
+        if (freeResources.contains(id)) {
             // already present
             return;
         }
         else {
-            freeResourcesMap.put(id, resourceLimit);
-            freeResourcesSet.add(new Pair(resourceLimit, id));
-            futureLeaders.add(new Leader(id, velocity));
+            freeResources.add(id, resourceLimit);
+            leaderRanking.add(id, velocity);
+            nextLeaderId = leaderRanking.getBest(currentLeaderId);
             // totalFreeResource += resourceLimit;
             add(resourceLimit);
         }
     }
 
-    private Map<Integer,Integer> allocateResource(int resourcesNeeded) {
+    // Assigns resourcesNeeded of request reqId to the members with most free resource,
+    // the assignment is recorded in workStore and in the PSTART payload being built
+    private void allocateResource(int reqId, int resourcesNeeded) {
         assert(resourcesNeeded >= 0);
         assert(resourcesNeeded <= totalFreeResource);
         int allocatedResources = 0;
-        Map<Integer,Integer> workAssignment = new HashMap<Integer, Integer>();
         while (allocatedResources < resourcesNeeded) {
-            Pair p = freeResourcesSet.pollFirst();
-            if (allocatedResources + p.first > resourcesNeeded) {
-                int acceptedResources = resourcesNeeded - allocatedResources;
-                freeResourcesMap.replace(p.second, p.first - acceptedResources);
-                freeResourcesSet.add(new Pair(p.first - acceptedResources, p.second));
-                workAssignment.put(p.second, acceptedResources);
-                allocatedResources += acceptedResources;
-                // totalFreeResource -= acceptedResources;
-                subtract(acceptedResources);
-            }
-            else {
-                freeResourcesMap.replace(p.second, 0);
-                workAssignment.put(p.second, p.first);
-                allocatedResources += p.first;
-                // totalFreeResource -= p.first;
-                subtract(p.first);
-            }
+            // Members without free resource sink to the bottom and are never reached here
+            int workerId = freeResources.peekId();
+            int freeResource = freeResources.peekResource();
+            int acceptedResources = Math.min(freeResource, resourcesNeeded - allocatedResources);
+            freeResources.set(workerId, freeResource - acceptedResources);
+            workStore.addWork(reqId, workerId, acceptedResources);
+            assignmentBuilder.add(workerId, reqId, acceptedResources);
+            allocatedResources += acceptedResources;
+            subtract(acceptedResources);
         }
         assert(allocatedResources == resourcesNeeded);
-        return workAssignment;
     } 
 
     public void addNewRequest(Packet reqPacket) {
@@ -167,128 +115,79 @@ public class Cloud {
 
     private void replenishResource(int id, int replenishAmount) {
         assert(isMember(id));
-        int freeResource = freeResourcesMap.get(id);
-        if (freeResource > 0) {
-            boolean removed = freeResourcesSet.remove(new Pair(freeResource, id));
-            assert(removed == true);
-        }
-        freeResourcesSet.add(new Pair(freeResource + replenishAmount, id));
-        freeResourcesMap.replace(id, freeResource + replenishAmount);
+        freeResources.set(id, freeResources.get(id) + replenishAmount);
         // totalFreeResource += replenishAmount;
         add(replenishAmount);
         return;
     }
 
     public void markAsDone(int reqId, int workerId, int workDoneAmount) {
-        // System.out.println("Worker " + workerId + " submits " + workDoneAmount + " work for request id " + reqId);
-        if (!globalWorkStore.containsKey(reqId)) {
-            // System.out.println("Worker " + workerId + " illegal reqId " + workDoneAmount + " work for request id " + reqId);
-            return;
-        }
-        Map<Integer,Integer> workAssignment = globalWorkStore.get(reqId);
-        if (!workAssignment.containsKey(workerId)) {
-            // printFreeResourceMap(workAssignment);
-            // System.out.println("Worker " + workerId + " illegal worker " + workDoneAmount + " work for request id " + reqId);
+        // Work of requests or workers no longer in the store is ignored
+        int workAllocated = workStore.getWork(reqId, workerId);
+        if (workAllocated < 0) {
             return;
         }
-        int workAllocated = workAssignment.get(workerId);
         if (workAllocated < workDoneAmount) {
-            System.out.printf("App id %d, request id %d, worker id %d:\n", appId, reqId, workerId);
-            printFreeResourceMap(globalWorkStore.get(reqId));
-            System.out.println("Work allocated " + workAllocated + " but work done " + workDoneAmount);
+            simulatorRef.log.warn("App id %d, request id %d, worker id %d:", appId, reqId, workerId);
+            printWorkAssignment(reqId);
+            simulatorRef.log.warn("Work allocated %d but work done %d", workAllocated, workDoneAmount);
         }
         // assert workAllocated >= workDoneAmount : "Work allocated " + workAllocated + " but work done " + workDoneAmount;  
         workDoneAmount = Math.min(workDoneAmount, workAllocated);
-        if (workAllocated - workDoneAmount == 0) {
-            workAssignment.remove(workerId);
-            // System.out.println("Worker " + workerId + " has done " + workDoneAmount + " work for request id " + reqId + " and deleted, remaining " + workAssignment.size());
-        }
-        else {
-            workAssignment.replace(workerId, workAllocated - workDoneAmount);
-            // System.out.println("Worker " + workerId + " has done " + workDoneAmount + " work for request id " + reqId + " out of " + workAllocated + ", remaining " + workAssignment.size());
-        }
+        boolean serviced = workStore.subtractWork(reqId, workerId, workDoneAmount);
         replenishResource(workerId, workDoneAmount);
-        if (globalWorkStore.get(reqId).isEmpty()) {
-            // System.out.printf("Request %d serviced\n", reqId);
-            globalWorkStore.remove(reqId);
+        if (simulatorRef.trace != null) {
+            simulatorRef.trace.record(TraceRecorder.EVENT_TYPE.WORK_DONE, simulatorRef.currentTime, null, appId, workerId, currentLeaderId, reqId, workDoneAmount);
+        }
+        if (serviced) {
             this.simulatorRef.incrTotalRequestsServiced();
         }
         return;
     }
 
-    private void printFreeResourceMap(Map<Integer,Integer> map) {
-        String message = "Map of size " + map.size() + ": ";
-        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
-            message += (entry.getKey() + "(" + entry.getValue() + ") "); 
-        }
-        System.out.println(message);
-    }
-
-    private void printFreeResourceSet() {
-        String message = "Set of size " + freeResourcesSet.size() + ": ";
-        for (Pair p : freeResourcesSet) {
-            message += (p.second + "(" + p.first + ") "); 
-        }
-        System.out.println(message);
+    private void printWorkAssignment(int reqId) {
+        StringBuilder message = new StringBuilder();
+        workStore.appendRequest(message, reqId);
+        simulatorRef.log.warn("%s", message);
     }
 
-    public Map<Integer, Map<Integer,Integer>> reassignWork(int id) {
-        Map<Integer, Map<Integer,Integer>> complementWorkStore = new HashMap<Integer, Map<Integer,Integer>>();
+    public WorkAssignment reassignWork(int id) {
         if (!isMember(id)) {
             // System.out.println(id + " is not a member of cloud " + appId);
-            return complementWorkStore;
+            return WorkAssignment.EMPTY;
         }
         // Delete the member
-        int resourceProvided = freeResourcesMap.get(id);
-        if (resourceProvided > 0) {
-            boolean removed = freeResourcesSet.remove(new Pair(resourceProvided, id));
-            if (!removed) {
-                System.out.println(id + "," + resourceProvided);
-                printFreeResourceMap(freeResourcesMap);
-                printFreeResourceSet();
-            }
-            assert(removed == true);
-        }
-        freeResourcesMap.remove(id);
+        int resourceProvided = freeResources.get(id);
+        freeResources.remove(id);
         // totalFreeResource -= resourceProvided;
         subtract(resourceProvided);
-        for (Leader potentiaLeader : futureLeaders) {
-            if (potentiaLeader.id == id) {
-                futureLeaders.remove(potentiaLeader);
-                break;
-            }
-        }
+        leaderRanking.remove(id);
+        nextLeaderId = leaderRanking.getBest(currentLeaderId);
         
-        // Iterate through globalWorkStore and find where this member is currently working
-        globalWorkStore.forEach((reqId, workAssignment) -> {
-            if (workAssignment.containsKey(id)) {
-                int resourcesNeeded = workAssignment.get(id);
-                workAssignment.remove(id);
-                if (resourcesNeeded > totalFreeResource) {
-                    System.out.println("Forfeit work " + resourcesNeeded + " by " + id + ", total resources " + totalFreeResource);
-                }
-                else {
-                    Map<Integer,Integer> complementworkAssignment = allocateResource(resourcesNeeded);
-                    // join workAssignment and workAssignment;
-                    complementworkAssignment.forEach((workerId, work) -> {
-                        if (workAssignment.containsKey(workerId)) {
-                            workAssignment.replace(workerId, workAssignment.get(workerId) + work);
-                        } 
-                        else {
-                            workAssignment.put(workerId, work);
-                        }
-                    });
-                    // Build complement work store
-                    complementWorkStore.put(reqId, complementworkAssignment);
+        // Only the requests this member was working on are visited
+        int requestCount = workStore.getRequestCount(id);
+        if (leftReqIds.length < requestCount) {
+            leftReqIds = new int[Math.max(requestCount, 2 * leftReqIds.length)];
+            leftWork = new int[leftReqIds.length];
+        }
+        requestCount = workStore.removeMember(id, leftReqIds, leftWork);
+        for (int i = 0; i < requestCount; i++) {
+            int reqId = leftReqIds[i];
+            int resourcesNeeded = leftWork[i];
+            if (resourcesNeeded > totalFreeResource) {
+                if (simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.INFO)) {
+                    simulatorRef.log.info("Forfeit work %d by %d, total resources %d", resourcesNeeded, id, totalFreeResource);
                 }
             }
-        });
+            else {
+                allocateResource(reqId, resourcesNeeded);
+            }
+        }
 
-        return complementWorkStore;
+        return assignmentBuilder.build();
     }
 
-    public Map<Integer, Map<Integer,Integer>> processPendingRequests() {
-        Map<Integer, Map<Integer,Integer>> complementGlobalWorkStore = new HashMap<Integer, Map<Integer,Integer>>();
+    public WorkAssignment processPendingRequests() {
         while (!pendingRequests.isEmpty()) {
             Request currentRequest = pendingRequests.peek();
             if (currentRequest.resourcesNeeded > totalFreeResource) {
@@ -296,18 +195,12 @@ public class Cloud {
             }
             else {
                 simulatorRef.changeTotalRequestsQueued(false);
-                Map<Integer,Integer> workAssignment = allocateResource(currentRequest.resourcesNeeded);
-                assert(!globalWorkStore.containsKey(currentRequest.id));
-                globalWorkStore.put(currentRequest.id, workAssignment);
-                Map<Integer,Integer> workAssignmentCopy = new HashMap<Integer,Integer>();
-                workAssignment.forEach((workerId, work) -> { 
-                    workAssignmentCopy.put(workerId, work);
-                });
-                complementGlobalWorkStore.put(currentRequest.id, workAssignmentCopy);
+                workStore.addRequest(currentRequest.id);
+                allocateResource(currentRequest.id, currentRequest.resourcesNeeded);
                 pendingRequests.remove();
             }
         }
-        return complementGlobalWorkStore;
+        return assignmentBuilder.build();
     }
 
     public boolean isCloudLeader(int id) {
@@ -315,48 +208,52 @@ public class Cloud {
     }
 
     public boolean isNextLeader(int id) {
-        if (futureLeaders.size() < 2) {
-            System.out.println("No future leader");
+        if (nextLeaderId == LeaderRanking.NO_MEMBER && simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.DEBUG)) {
+            simulatorRef.log.debug("No future leader");
         }
-        return futureLeaders.size() >= 2 && futureLeaders.get(1).id == id;
+        return nextLeaderId == id;
     }
 
     public void assignNextLeader() {
-        if (futureLeaders.size() < 2) {
-            System.out.println("No future leader can be assigned");
+        if (nextLeaderId == LeaderRanking.NO_MEMBER) {
+            simulatorRef.log.warn("No future leader can be assigned");
+            return;
+        }
+        if (simulatorRef.trace != null) {
+            simulatorRef.trace.record(TraceRecorder.EVENT_TYPE.LEADER_CHANGED, simulatorRef.currentTime, null, appId, nextLeaderId, currentLeaderId, 0, 0);
         }
-        Leader nextLeader = futureLeaders.get(1);
-        this.currentLeaderId = nextLeader.id;
+        this.currentLeaderId = nextLeaderId;
+        nextLeaderId = leaderRanking.getBest(currentLeaderId);
     }
 
+    // The member with the lowest LQI leads, LQI is computed afresh from the current members
     public void electLeader() {
-        for (Leader potentiaLeader1 : futureLeaders) {
-            for (Leader potentialLeader2 : futureLeaders) {
-                potentiaLeader1.LQI += Math.abs(potentiaLeader1.speed - potentialLeader2.speed); 
-            }
-        }
-        Collections.sort(futureLeaders, new SortByLQI());
-        currentLeaderId = futureLeaders.get(0).id;
+        currentLeaderId = leaderRanking.getBest(LeaderRanking.NO_MEMBER);
+        nextLeaderId = leaderRanking.getBest(currentLeaderId);
         return;
     }
 
     public boolean justMetResourceQuota() {
         return (resourceQuotaMetTime == Integer.MAX_VALUE &&
-            totalFreeResource >= Config.APPLICATION_REQUIREMENT[appId]);
+            totalFreeResource >= simulatorRef.config.APPLICATION_REQUIREMENT[appId]);
     }
 
     public void recordCloudFormed(int formedTime) {
         this.resourceQuotaMetTime = formedTime;
+        if (simulatorRef.trace != null) {
+            simulatorRef.trace.record(TraceRecorder.EVENT_TYPE.CLOUD_FORMED, formedTime, null, appId, currentLeaderId, -1, formedTime - initialRequestTime, formedByRSU ? 1 : 0);
+        }
         this.simulatorRef.recordCloudFormed(formedTime - this.initialRequestTime, formedByRSU);
         return;
     }
 
     public void printStats() {
-        String message = "Cloud with leader " + currentLeaderId + ", members ";
-        for (Map.Entry<Integer, Integer> entry : freeResourcesMap.entrySet()) {
-            message += (entry.getKey() + "(" + entry.getValue() + ") "); 
+        if (!simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.INFO)) return;
+        StringBuilder message = new StringBuilder("Cloud with leader ").append(currentLeaderId).append(", members ");
+        for (int slot = 0; slot < freeResources.size(); slot++) {
+            message.append(freeResources.getIdAt(slot)).append('(').append(freeResources.getResourceAt(slot)).append(") ");
         }
-        message += "formed.";
-        System.out.println(message);
+        message.append("formed.");
+        simulatorRef.log.info("%s", message);
     }
 }
\ No newline at end of file
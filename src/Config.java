@@ -1,31 +1,77 @@
-public class Config {
-    static int STOP_TIME = 30000;
-    static float ROAD_END = 15000.0f; // m
-    static float ROAD_START = 0.0f;
+// Parameters of one simulation run. Every Simulator owns its instance,
+// so runs with different parameters can share the JVM.
+public class Config implements Cloneable {
+    int STOP_TIME = 30000;
+    long RANDOM_SEED = 1588266314130L;
+    float ROAD_END = 15000.0f; // m
+    float ROAD_START = 0.0f;
 
-    static float VEHICLE_SPEED_MIN = 0; // m/s
-    static float VEHICLE_SPEED_MAX = 27.78f; // m/s
-    static float VEHICLE_SPEED_STD_DEV = 1.00f;
+    float VEHICLE_SPEED_MIN = 0; // m/s
+    float VEHICLE_SPEED_MAX = 27.78f; // m/s
+    float VEHICLE_SPEED_STD_DEV = 1.00f;
 
-    static float SEGMENT_LENGTH = 600;
-    static float TRANSMISSION_RANGE = 300;
+    float SEGMENT_LENGTH = 600;
+    float TRANSMISSION_RANGE = 300;
     static enum PACKET_TYPE {
         RREQ, RJOIN, RREP, RACK, RTEAR, PSTART, PDONE, RLEAVE, RPROBE, RPRESENT;
     }
-    static boolean useFair = true;
-    static int APPLICATION_TYPE_COUNT = 5;
+    int APPLICATION_TYPE_COUNT = 5;
     // A vehicle stays in a segment for a minimum of 24 s,
     // as given by segment length (600 m) / max speed (25 m/s).
     // Thus requirement should be in seconds.
-    static int[] APPLICATION_REQUIREMENT = {500, 1000, 1500, 2000, 2500}; 
-    static int WORK_CHUNK_SIZE = 100;
-    static int PROCESSING_SPEED = 1;
+    int[] APPLICATION_REQUIREMENT = {500, 1000, 1500, 2000, 2500}; 
+    int WORK_CHUNK_SIZE = 100;
+    int PROCESSING_SPEED = 1;
     
-    static int INV_RREQ_PROB = 2000;
-    static int TOTAL_CHANNEL_COUNT = 1;
-    static int CONTENTION_WINDOW_BASE = 1;
-    static int CONTENTION_WINDOW_MAX = 1024;
+    int INV_RREQ_PROB = 2000;
+    static enum ARRIVAL_TYPE {
+        GEOMETRIC, PER_APP_RATE, BURSTY;
+    }
+    ARRIVAL_TYPE ARRIVAL_PROCESS = ARRIVAL_TYPE.GEOMETRIC; // GEOMETRIC uses INV_RREQ_PROB
+    double[] APPLICATION_REQUEST_RATE = {0.0001, 0.0001, 0.0001, 0.0001, 0.0001}; // per ms
+    // Calm and burst state of BURSTY
+    double[] BURSTY_REQUEST_RATE = {0.00025, 0.0025}; // per ms
+    double[] BURSTY_MEAN_SOJOURN = {9000, 1000}; // ms
+    int TOTAL_CHANNEL_COUNT = 1;
+    int CONTENTION_WINDOW_BASE = 1;
+    int CONTENTION_WINDOW_MAX = 1024;
     
-    static int MAX_RPRESENT_WAIT_TIME = 10;
-    static String LOG_PATH = "../logs/";
+    int MAX_RPRESENT_WAIT_TIME = 10;
+    int POSITION_UPDATE_INTERVAL = 50; // ms
+    // Entities only reach their own and adjacent segments,
+    // segments with the same id modulo this count run concurrently
+    int SEGMENT_COLOUR_COUNT = 3;
+    static enum ENGINE_TYPE {
+        THREAD_POOL, SEGMENT_WORKERS, EVENT_DRIVEN, ACTORS;
+    }
+    ENGINE_TYPE ENGINE = ENGINE_TYPE.SEGMENT_WORKERS;
+    int WORKER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    long ACTOR_STACK_SIZE = 256 * 1024; // Only used without virtual threads
+    int TIMING_WHEEL_SLOT_COUNT = 128; // Power of two
+    int PACKET_LOG_CHUNK_SIZE = 1024;
+    int PACKET_LOG_RECLAIM_INTERVAL = 50; // ms
+    String LOG_PATH = "../logs/";
+    static enum LOG_LEVEL_TYPE {
+        DEBUG, INFO, WARN, OFF;
+    }
+    LOG_LEVEL_TYPE LOG_LEVEL = LOG_LEVEL_TYPE.INFO;
+    int LOG_RING_CAPACITY = 1024; // Records buffered per logging thread, power of two
+    boolean TRACE_ENABLED = false; // Binary event trace next to each run's log, see TraceReader
+    int TRACE_BLOCK_RECORDS = 4096; // Most records per compressed trace block, see TraceRecorder
+    int METRICS_SAMPLE_INTERVAL = 100; // ms between rows of each run's metrics CSV, 0 for none
+    String REPLAY_PATH = null; // Mobility and requests from this CSV instead of at random, see TraceReplay
+
+    public Config copy() {
+        try {
+            Config config = (Config) super.clone();
+            config.APPLICATION_REQUIREMENT = APPLICATION_REQUIREMENT.clone();
+            config.APPLICATION_REQUEST_RATE = APPLICATION_REQUEST_RATE.clone();
+            config.BURSTY_REQUEST_RATE = BURSTY_REQUEST_RATE.clone();
+            config.BURSTY_MEAN_SOJOURN = BURSTY_MEAN_SOJOURN.clone();
+            return config;
+        }
+        catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+import java.util.*;
+
+// Every interval carries a request with probability 1 / INV_RREQ_PROB,
+// for an application chosen uniformly
+public class GeometricArrivalProcess implements ArrivalProcess {
+    Config config;
+    SplittableRandom random;
+    double logFailureProbability;
+    int arrivalTime;
+    int appId;
+
+    public GeometricArrivalProcess(Config config, SplittableRandom random) {
+        this.config = config;
+        this.random = random;
+        this.logFailureProbability = Math.log1p(-1.0 / config.INV_RREQ_PROB);
+        advance(-1);
+    }
+
+    public int getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public int getAppId() {
+        return appId;
+    }
+
+    public void advance(int time) {
+        double uniform = 1.0 - random.nextDouble(); // (0, 1]
+        arrivalTime = time + 1 + (int) Math.min(Math.log(uniform) / logFailureProbability, Integer.MAX_VALUE / 2);
+        appId = random.nextInt(config.APPLICATION_TYPE_COUNT);
+    }
+}
@@ -0,0 +1,65 @@
+// Fixed size histogram of non-negative delays in ms. Delays below 8 get a bucket each,
+// larger ones are bucketed by power of two split in four, so a reported percentile
+// is within 25% of the true value. Not thread safe, each thread keeps its own.
+public class LatencyHistogram {
+    static final int EXACT_BUCKET_COUNT = 8;
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = EXACT_BUCKET_COUNT + (31 - 3) * SUB_BUCKET_COUNT;
+
+    long[] counts;
+    long totalCount;
+    int max;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+        this.totalCount = 0;
+        this.max = 0;
+    }
+
+    static int bucketOf(int value) {
+        if (value < EXACT_BUCKET_COUNT) return value;
+        int exponent = 31 - Integer.numberOfLeadingZeros(value); // At least 3
+        int subBucket = (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return EXACT_BUCKET_COUNT + (exponent - 3) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Largest value that falls in bucket
+    static int highestValueOf(int bucket) {
+        if (bucket < EXACT_BUCKET_COUNT) return bucket;
+        int exponent = (bucket - EXACT_BUCKET_COUNT) / SUB_BUCKET_COUNT + 3;
+        int subBucket = (bucket - EXACT_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowest = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return (int) Math.min(Integer.MAX_VALUE, lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1);
+    }
+
+    public void record(int value) {
+        counts[bucketOf(value)]++;
+        totalCount++;
+        if (value > max) max = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    // Smallest bucket bound that at least fraction of the values do not exceed
+    public int getPercentile(double fraction) {
+        if (totalCount == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestValueOf(i), max);
+        }
+        return max;
+    }
+
+    public int getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.*;
+
+// Leader candidates of a cloud ranked by LQI, the sum of absolute differences between a member's
+// velocity and every other member's. Members are kept in a treap ordered by (velocity, join order)
+// whose nodes carry subtree size and velocity sum, so a member's LQI follows from its rank and
+// prefix sum, and joins, leaves and finding the best ranked members all take O(log n).
+// LQI is convex along velocity order and lowest at the median, so the best members lie next to it.
+public class LeaderRanking {
+    static final int NO_MEMBER = 0; // Vehicle ids start from 1 and RSU ids from -1
+    private static final int NIL = -1;
+
+    private int[] ids;
+    private float[] velocities;
+    private int[] seqs; // Join order, breaks ties of velocity and LQI
+    private int[] priorities;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private double[] sums; // Velocity sum of the subtree
+    private int root;
+    private int nextSeq;
+    private int freeNode; // Released nodes, linked through left
+    private int nodeCount; // Nodes ever used
+    private final IntIntHashMap nodes; // Member id to node
+
+    // Results of split and select, to avoid allocating pairs
+    private int splitLeft;
+    private int splitRight;
+    private double selectedPrefixSum;
+    private int bestNode; // Best member so far of getBest and its LQI
+    private double bestLQI;
+
+    public LeaderRanking() {
+        this.ids = new int[8];
+        this.velocities = new float[8];
+        this.seqs = new int[8];
+        this.priorities = new int[8];
+        this.left = new int[8];
+        this.right = new int[8];
+        this.sizes = new int[8];
+        this.sums = new double[8];
+        this.root = NIL;
+        this.nextSeq = 0;
+        this.freeNode = NIL;
+        this.nodeCount = 0;
+        this.nodes = new IntIntHashMap(8, NIL);
+    }
+
+    public int size() {
+        return sizeOf(root);
+    }
+
+    public boolean contains(int id) {
+        return nodes.containsKey(id);
+    }
+
+    public void add(int id, float velocity) {
+        assert !contains(id);
+        int node = newNode(id, velocity);
+        nodes.put(id, node);
+        split(root, node);
+        int lower = splitLeft, upper = splitRight;
+        root = merge(merge(lower, node), upper);
+    }
+
+    public void remove(int id) {
+        int node = nodes.get(id);
+        if (node == NIL) return;
+        nodes.remove(id);
+        root = remove(root, node);
+        left[node] = freeNode;
+        freeNode = node;
+    }
+
+    // Member with the lowest LQI other than excludedId, ties going to the earlier joiner.
+    // NO_MEMBER if there is none.
+    public int getBest(int excludedId) {
+        int n = size();
+        int from = Math.max(0, (n - 1) / 2 - 1);
+        int to = Math.min(n - 1, n / 2 + 1);
+        bestNode = NIL;
+        for (int rank = from; rank <= to; rank++) {
+            consider(rank, n, excludedId);
+        }
+        if (bestNode == NIL) return NO_MEMBER;
+        // Members sharing a velocity have the same LQI, an earlier joiner of the best
+        // velocity may be ranked outside the window
+        for (int rank = from - 1; rank >= 0 && consider(rank, n, excludedId); rank--);
+        for (int rank = to + 1; rank < n && consider(rank, n, excludedId); rank++);
+        return ids[bestNode];
+    }
+
+    // Makes the member of the given rank the best one if it is, returns whether its LQI is
+    // no higher than the best one's
+    private boolean consider(int rank, int n, int excludedId) {
+        int node = select(rank);
+        double velocity = velocities[node];
+        double below = velocity * rank - selectedPrefixSum;
+        double above = (sumOf(root) - selectedPrefixSum - velocity) - velocity * (n - rank - 1);
+        double LQI = below + above;
+        if (bestNode != NIL && LQI > bestLQI) return false;
+        if (ids[node] != excludedId && (bestNode == NIL || LQI < bestLQI || seqs[node] < seqs[bestNode])) {
+            bestNode = node;
+            bestLQI = LQI;
+        }
+        return true;
+    }
+
+    private int sizeOf(int node) {
+        return (node == NIL) ? 0 : sizes[node];
+    }
+
+    private double sumOf(int node) {
+        return (node == NIL) ? 0 : sums[node];
+    }
+
+    private void update(int node) {
+        sizes[node] = sizeOf(left[node]) + 1 + sizeOf(right[node]);
+        sums[node] = sumOf(left[node]) + velocities[node] + sumOf(right[node]);
+    }
+
+    private boolean isBefore(int node, int otherNode) {
+        int order = Float.compare(velocities[node], velocities[otherNode]);
+        return (order != 0) ? order < 0 : seqs[node] < seqs[otherNode];
+    }
+
+    private int newNode(int id, float velocity) {
+        int node;
+        if (freeNode != NIL) {
+            node = freeNode;
+            freeNode = left[node];
+        }
+        else {
+            if (nodeCount == ids.length) grow();
+            node = nodeCount++;
+        }
+        int seq = nextSeq++;
+        // Priorities hash the join order, so the shape of the tree is the same in every run
+        int h = seq * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        ids[node] = id;
+        velocities[node] = velocity;
+        seqs[node] = seq;
+        priorities[node] = h;
+        left[node] = NIL;
+        right[node] = NIL;
+        update(node);
+        return node;
+    }
+
+    // Splits the subtree of node into splitLeft, the nodes before pivot, and splitRight, the rest
+    private void split(int node, int pivot) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        if (isBefore(node, pivot)) {
+            split(right[node], pivot);
+            right[node] = splitLeft;
+            splitLeft = node;
+        }
+        else {
+            split(left[node], pivot);
+            left[node] = splitRight;
+            splitRight = node;
+        }
+        update(node);
+    }
+
+    // Joins two subtrees whose nodes in lower all come before those in upper
+    private int merge(int lower, int upper) {
+        if (lower == NIL) return upper;
+        if (upper == NIL) return lower;
+        if (priorities[lower] > priorities[upper]) {
+            right[lower] = merge(right[lower], upper);
+            update(lower);
+            return lower;
+        }
+        left[upper] = merge(lower, left[upper]);
+        update(upper);
+        return upper;
+    }
+
+    private int remove(int subtree, int node) {
+        if (subtree == node) return merge(left[node], right[node]);
+        if (isBefore(node, subtree)) left[subtree] = remove(left[subtree], node);
+        else right[subtree] = remove(right[subtree], node);
+        update(subtree);
+        return subtree;
+    }
+
+    // Node of the given rank in velocity order, the velocity sum of the nodes before it is left in selectedPrefixSum
+    private int select(int rank) {
+        int node = root;
+        double prefixSum = 0;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (rank < leftSize) {
+                node = left[node];
+            }
+            else if (rank == leftSize) {
+                selectedPrefixSum = prefixSum + sumOf(left[node]);
+                return node;
+            }
+            else {
+                prefixSum += sumOf(left[node]) + velocities[node];
+                rank -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = 2 * ids.length;
+        ids = Arrays.copyOf(ids, capacity);
+        velocities = Arrays.copyOf(velocities, capacity);
+        seqs = Arrays.copyOf(seqs, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Per-run log that never makes worker threads wait on each other or on the file.
+    Every logging thread appends its records, the format string and unformatted arguments,
+    to its own single-producer ring. A background thread drains the rings, formats the records
+    and writes them out through a large buffer. Records of one thread keep their order,
+    records of different threads are interleaved in the order they are drained.
+    A message without arguments is written as is, otherwise it is a String.format pattern.
+    The arguments are boxed into an array before the level is checked, so calls on hot paths
+    should test isEnabled first. Once the drain thread has failed, records are dropped.
+    A thread that is about to end calls releaseThread, its ring is dropped once drained.
+*/
+public class Logger implements Closeable {
+    private final Config.LOG_LEVEL_TYPE threshold;
+    private final int ringCapacity;
+    private final Writer writer;
+    private final List<Ring> rings;
+    private final ThreadLocal<Ring> localRing; // Unset until the thread first logs
+    private final Thread drainThread;
+    private final StringBuilder lineBuilder;
+    private final Formatter formatter;
+    private volatile boolean closed;
+    private volatile boolean failed; // Drain thread stopped on a write error
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    // Single producer, single consumer ring of log records
+    private class Ring {
+        final String[] formats;
+        final Object[][] args;
+        final AtomicLong head; // Next record to drain
+        final AtomicLong tail; // Next record to write
+        volatile boolean released; // The producer has ended, set after its last record
+
+        Ring() {
+            this.formats = new String[ringCapacity];
+            this.args = new Object[ringCapacity][];
+            this.head = new AtomicLong(0);
+            this.tail = new AtomicLong(0);
+            this.released = false;
+        }
+
+        void put(String format, Object[] arguments) {
+            long t = tail.get();
+            while (t - head.get() == ringCapacity) {
+                // Full, let the drain thread catch up unless it is gone
+                if (failed) return;
+                LockSupport.unpark(drainThread);
+                Thread.yield();
+            }
+            int slot = (int) t & (ringCapacity - 1);
+            formats[slot] = format;
+            args[slot] = arguments;
+            tail.lazySet(t + 1);
+        }
+
+        // Formats every published record into the writer, returns the number drained
+        int drainTo(Writer out) throws IOException {
+            long h = head.get();
+            long t = tail.get();
+            for (long i = h; i < t; i++) {
+                int slot = (int) i & (ringCapacity - 1);
+                lineBuilder.setLength(0);
+                if (args[slot].length == 0) {
+                    lineBuilder.append(formats[slot]);
+                }
+                else {
+                    formatter.format(formats[slot], args[slot]);
+                }
+                lineBuilder.append('\n');
+                out.append(lineBuilder);
+                formats[slot] = null;
+                args[slot] = null;
+            }
+            head.lazySet(t);
+            return (int) (t - h);
+        }
+    }
+
+    public Logger(Config config, OutputStream out) {
+        this.threshold = config.LOG_LEVEL;
+        this.ringCapacity = Integer.highestOneBit(Math.max(2, config.LOG_RING_CAPACITY));
+        this.writer = new BufferedWriter(new OutputStreamWriter(out), 1 << 16);
+        this.rings = new CopyOnWriteArrayList<Ring>();
+        this.localRing = new ThreadLocal<Ring>();
+        this.lineBuilder = new StringBuilder(256);
+        this.formatter = new Formatter(lineBuilder);
+        this.closed = false;
+        this.failed = false;
+        this.drainThread = new Thread(this::drainLoop, "log-drain");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    public boolean isEnabled(Config.LOG_LEVEL_TYPE level) {
+        return level.compareTo(threshold) >= 0 && threshold != Config.LOG_LEVEL_TYPE.OFF;
+    }
+
+    public void log(Config.LOG_LEVEL_TYPE level, String format, Object... args) {
+        if (!isEnabled(level)) return;
+        if (closed) throw new IllegalStateException("Log is closed");
+        Ring ring = localRing.get();
+        if (ring == null) {
+            ring = new Ring();
+            rings.add(ring);
+            localRing.set(ring);
+        }
+        ring.put(format, args.length == 0 ? NO_ARGS : args);
+    }
+
+    // Hands the records of the calling thread to the drain thread, which drops its ring
+    // once they are written. Called by threads that are about to end.
+    public void releaseThread() {
+        Ring ring = localRing.get();
+        if (ring == null) return;
+        localRing.remove();
+        ring.released = true;
+        LockSupport.unpark(drainThread);
+    }
+
+    public void debug(String format, Object... args) {
+        log(Config.LOG_LEVEL_TYPE.DEBUG, format, args);
+    }
+
+    public void info(String format, Object... args) {
+        log(Config.LOG_LEVEL_TYPE.INFO, format, args);
+    }
+
+    public void warn(String format, Object... args) {
+        log(Config.LOG_LEVEL_TYPE.WARN, format, args);
+    }
+
+    private int drainAll() throws IOException {
+        int drained = 0;
+        for (Ring ring : rings) {
+            // Read before draining, so the records of a released ring are all drained
+            boolean released = ring.released;
+            drained += ring.drainTo(writer);
+            if (released) rings.remove(ring);
+        }
+        return drained;
+    }
+
+    private void drainLoop() {
+        try {
+            while (!closed) {
+                if (drainAll() == 0) {
+                    writer.flush();
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+            // Producers are done once closed is seen, take what is left
+            drainAll();
+            writer.flush();
+        } catch (IOException ioe) {
+            failed = true;
+            System.err.println("IOException: " + ioe.getMessage());
+        }
+    }
+
+    // Waits until every record logged before this call is written out
+    public void flush() {
+        Ring[] snapshot = rings.toArray(new Ring[0]); // Released rings leave rings once drained
+        long[] targets = new long[snapshot.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = snapshot[i].tail.get();
+        }
+        for (int i = 0; i < targets.length; i++) {
+            while (snapshot[i].head.get() < targets[i]) {
+                if (failed) return;
+                LockSupport.unpark(drainThread);
+                Thread.yield();
+            }
+        }
+    }
+
+    // Must only be called once no other thread logs anymore
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+}
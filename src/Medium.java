@@ -1,15 +1,17 @@
 public class Medium {        
     Channel channels[];
+    Config config;
 
-    public Medium() {
-        this.channels = new Channel[Config.TOTAL_CHANNEL_COUNT];
-        for (int i = 0; i < Config.TOTAL_CHANNEL_COUNT; i++) {
-            channels[i] = new Channel(i);
+    public Medium(Config config, TraceRecorder trace) {
+        this.config = config;
+        this.channels = new Channel[config.TOTAL_CHANNEL_COUNT];
+        for (int i = 0; i < config.TOTAL_CHANNEL_COUNT; i++) {
+            channels[i] = new Channel(config, i, trace);
         }
     }  
     
     public Channel getChannel(int index) {
-        assert(index >= 0 && index < Config.TOTAL_CHANNEL_COUNT);
+        assert(index >= 0 && index < config.TOTAL_CHANNEL_COUNT);
         return channels[index];
     } 
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+import java.io.*;
+
+/*
+    Writes a tab separated row of counters to a per-run CSV,
+    like plot.csv, every METRICS_SAMPLE_INTERVAL ms of simulated time.
+    It runs on the simulator thread between intervals, when no entity runs, so it reads
+    the per-thread packet counters directly and entities never wait for it.
+    Packet counts are per sample, the other counters are running totals.
+    Every row is flushed as soon as it is written, so the file can be followed during a run.
+*/
+public class MetricsSampler implements Closeable {
+    Simulator simulatorRef;
+    Writer writer;
+    int sampleInterval;
+    long[] lastTransmittedCount; // By type ordinal
+    long[] lastReceivedCount;
+    int lastSampleTime;
+    long lastSampleNanos;
+
+    public MetricsSampler(Simulator simulatorRef, Writer writer) throws IOException {
+        this.simulatorRef = simulatorRef;
+        this.writer = new BufferedWriter(writer);
+        this.sampleInterval = simulatorRef.config.METRICS_SAMPLE_INTERVAL;
+        this.lastTransmittedCount = new long[Config.PACKET_TYPE.values().length];
+        this.lastReceivedCount = new long[Config.PACKET_TYPE.values().length];
+        this.lastSampleTime = 0;
+        this.lastSampleNanos = System.nanoTime();
+
+        StringBuilder header = new StringBuilder("Time (ms)\tTicks per Wall Second");
+        for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
+            header.append('\t').append(type).append(" Transmitted");
+        }
+        for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
+            header.append('\t').append(type).append(" Received");
+        }
+        header.append("\tClouds formed by RSU\tClouds formed Distributedly\tRequests Queued\tRequests Serviced\tLeader Change Count\tLeader Leave Count\n");
+        this.writer.write(header.toString());
+        this.writer.flush();
+    }
+
+    // Called after every interval with the time of the next one
+    public void onIntervalEnd(int currentTime) throws IOException {
+        if (currentTime % sampleInterval != 0) return;
+        long nanos = System.nanoTime();
+        double ticksPerSecond = (currentTime - lastSampleTime) * 1e9 / Math.max(1, nanos - lastSampleNanos);
+        lastSampleTime = currentTime;
+        lastSampleNanos = nanos;
+
+        long[] transmittedCount = new long[lastTransmittedCount.length];
+        long[] receivedCount = new long[lastReceivedCount.length];
+        for (Simulator.PacketStat[] stats : simulatorRef.threadPacketStats) {
+            for (int i = 0; i < stats.length; i++) {
+                transmittedCount[i] += stats[i].transmittedCount;
+                receivedCount[i] += stats[i].receivedCount;
+            }
+        }
+
+        StringBuilder row = new StringBuilder();
+        row.append(currentTime).append('\t').append(Math.round(ticksPerSecond));
+        for (int i = 0; i < transmittedCount.length; i++) {
+            row.append('\t').append(transmittedCount[i] - lastTransmittedCount[i]);
+        }
+        for (int i = 0; i < receivedCount.length; i++) {
+            row.append('\t').append(receivedCount[i] - lastReceivedCount[i]);
+        }
+        row.append('\t').append(simulatorRef.totalCloudsFormedRSU.intValue())
+            .append('\t').append(simulatorRef.totalCloudsFormedSelf.intValue())
+            .append('\t').append(simulatorRef.totalRequestsQueued.intValue())
+            .append('\t').append(simulatorRef.totalRequestsServiced.intValue())
+            .append('\t').append(simulatorRef.leaderChangeCount.intValue())
+            .append('\t').append(simulatorRef.leaderLeaveCount.intValue())
+            .append('\n');
+        writer.write(row.toString());
+        writer.flush();
+        lastTransmittedCount = transmittedCount;
+        lastReceivedCount = receivedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
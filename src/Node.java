@@ -0,0 +1,19 @@
+import java.util.concurrent.*;
+
+// What the simulation engines need from a vehicle or RSU. call() runs one
+// interval of the node and moves its clock to the next interval.
+public interface Node extends Callable<Integer> {
+    int getId();
+
+    float getPosition();
+
+    // Intent phase of the current interval, see Channel.declareTransmitIntent
+    void declareTransmitIntent();
+
+    // Move the node's clock, used by engines that do not run every node in every interval
+    void setCurrentTime(int time);
+
+    // Earliest interval, at or after the node's clock, in which call() has work
+    // other than receiving packets. Integer.MAX_VALUE if there is none.
+    int getNextWakeTime();
+}
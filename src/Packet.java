@@ -7,11 +7,12 @@ public class Packet {
     int appId;
     float velocity;
     float position;
+    int transmitTime;
     Cloud cloud;       
     int reqResources;
     int offeredResources;
     Simulator simulatorRef;
-    Map<Integer, Map<Integer, Integer>> workAssignment;
+    WorkAssignment workAssignment;
     int workDoneAmount;
     int requestorId;
     boolean rsuReplied;
@@ -53,7 +54,7 @@ public class Packet {
     }
 
     // Constructor for PSTART
-    public Packet(Simulator simulatorRef, Config.PACKET_TYPE type, int senderId, int genTime, int appId, Map<Integer, Map<Integer, Integer>> workAssignment) {
+    public Packet(Simulator simulatorRef, Config.PACKET_TYPE type, int senderId, int genTime, int appId, WorkAssignment workAssignment) {
         this(simulatorRef, type, senderId, genTime, appId);
         assert (type == Config.PACKET_TYPE.PSTART) : "Packet constructor type mismatch";
         this.workAssignment = workAssignment;
@@ -77,6 +78,7 @@ public class Packet {
 
     public void recordTransmission(int currentTime, float currentPosition) {
         this.position = currentPosition;
+        this.transmitTime = currentTime;
         simulatorRef.recordTransmission(type, currentTime - genTime);
     }
 
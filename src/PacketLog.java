@@ -0,0 +1,126 @@
+import java.util.*;
+
+// Append-only packet log stored as a ring of fixed size chunks. Indices are
+// absolute for the whole run, chunks that every reader has consumed are
+// recycled so memory stays proportional to the unread tail.
+// Each chunk keeps the fields receivers filter on in primitive columns, next to
+// a column holding the Packet itself, so a scan only touches the packets it accepts.
+public class PacketLog {
+    private static class Chunk {
+        final byte[] types; // PACKET_TYPE ordinals
+        final int[] senderIds;
+        final int[] transmitTimes;
+        final Packet[] packets;
+
+        Chunk(int chunkSize) {
+            this.types = new byte[chunkSize];
+            this.senderIds = new int[chunkSize];
+            this.transmitTimes = new int[chunkSize];
+            this.packets = new Packet[chunkSize];
+        }
+    }
+
+    Chunk[] chunks;
+    int headChunk;      // Ring slot holding the oldest retained chunk
+    int chunkCount;     // Retained chunks, including the partially filled last one
+    int firstIndex;     // Absolute index of the first retained packet
+    int size;           // Absolute index one past the last packet
+    int chunkSize;
+    Deque<Chunk> spareChunks;
+
+    public PacketLog(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.chunks = new Chunk[4];
+        this.headChunk = 0;
+        this.chunkCount = 0;
+        this.firstIndex = 0;
+        this.size = 0;
+        this.spareChunks = new ArrayDeque<Chunk>();
+    }
+
+    // Bit of a packet type in the type masks taken by nextMatch
+    public static int typeMask(Config.PACKET_TYPE type) {
+        return 1 << type.ordinal();
+    }
+
+    public int firstIndex() {
+        return firstIndex;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Chunk chunkOf(int index) {
+        assert (index >= firstIndex && index < size) : "Packet log index " + index + " out of range";
+        return chunks[(headChunk + (index - firstIndex) / chunkSize) % chunks.length];
+    }
+
+    public Packet get(int index) {
+        return chunkOf(index).packets[(index - firstIndex) % chunkSize];
+    }
+
+    public int getTransmitTime(int index) {
+        return chunkOf(index).transmitTimes[(index - firstIndex) % chunkSize];
+    }
+
+    public void add(Packet packet) {
+        int offset = size - firstIndex;
+        if (offset == chunkCount * chunkSize) {
+            if (chunkCount == chunks.length) {
+                growRing();
+            }
+            Chunk chunk = spareChunks.poll();
+            chunks[(headChunk + chunkCount) % chunks.length] = (chunk != null) ? chunk : new Chunk(chunkSize);
+            chunkCount++;
+        }
+        Chunk chunk = chunks[(headChunk + offset / chunkSize) % chunks.length];
+        int slot = offset % chunkSize;
+        chunk.types[slot] = (byte) packet.type.ordinal();
+        chunk.senderIds[slot] = packet.senderId;
+        chunk.transmitTimes[slot] = packet.transmitTime;
+        chunk.packets[slot] = packet;
+        size++;
+    }
+
+    // Index of the first packet at or after fromIndex whose type is in typeMask and whose
+    // sender is not excludedSenderId, size() if there is none. Only the primitive columns are read.
+    public int nextMatch(int fromIndex, int excludedSenderId, int typeMask) {
+        int index = fromIndex;
+        while (index < size) {
+            int offset = index - firstIndex;
+            Chunk chunk = chunks[(headChunk + offset / chunkSize) % chunks.length];
+            int slot = offset % chunkSize;
+            int end = Math.min(chunkSize, slot + size - index);
+            for (; slot < end; slot++, index++) {
+                if ((typeMask & (1 << chunk.types[slot])) != 0 && chunk.senderIds[slot] != excludedSenderId) {
+                    return index;
+                }
+            }
+        }
+        return size;
+    }
+
+    // Release every whole chunk lying below watermark, all its packets must have been read
+    public void trim(int watermark) {
+        assert (watermark <= size) : "Packet log trimmed beyond its end";
+        while (chunkCount > 1 && watermark - firstIndex >= chunkSize) {
+            Chunk chunk = chunks[headChunk];
+            Arrays.fill(chunk.packets, null);
+            spareChunks.push(chunk);
+            chunks[headChunk] = null;
+            headChunk = (headChunk + 1) % chunks.length;
+            chunkCount--;
+            firstIndex += chunkSize;
+        }
+    }
+
+    private void growRing() {
+        Chunk[] newChunks = new Chunk[chunks.length * 2];
+        for (int i = 0; i < chunkCount; i++) {
+            newChunks[i] = chunks[(headChunk + i) % chunks.length];
+        }
+        chunks = newChunks;
+        headChunk = 0;
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.*;
+
+// Independent Poisson arrivals for each application at the per ms rates in
+// APPLICATION_REQUEST_RATE. Their superposition is sampled as one process and
+// the application of an arrival is picked in proportion to its rate.
+public class PerAppArrivalProcess implements ArrivalProcess {
+    Config config;
+    SplittableRandom random;
+    double[] cumulativeRate;
+    double totalRate;
+    int arrivalTime;
+    int appId;
+
+    public PerAppArrivalProcess(Config config, SplittableRandom random) {
+        this.config = config;
+        assert (config.APPLICATION_REQUEST_RATE.length == config.APPLICATION_TYPE_COUNT) : "One request rate needed per application";
+        this.random = random;
+        this.cumulativeRate = new double[config.APPLICATION_TYPE_COUNT];
+        this.totalRate = 0;
+        for (int i = 0; i < config.APPLICATION_TYPE_COUNT; i++) {
+            totalRate += config.APPLICATION_REQUEST_RATE[i];
+            cumulativeRate[i] = totalRate;
+        }
+        advance(-1);
+    }
+
+    public int getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public int getAppId() {
+        return appId;
+    }
+
+    public void advance(int time) {
+        // Arrivals within the same interval are merged into one request
+        double gap = -Math.log(1.0 - random.nextDouble()) / totalRate;
+        arrivalTime = time + 1 + (int) Math.min(gap, Integer.MAX_VALUE / 2);
+        double pick = random.nextDouble() * totalRate;
+        appId = 0;
+        while (appId < config.APPLICATION_TYPE_COUNT - 1 && pick >= cumulativeRate[appId]) {
+            appId++;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.*;
+
+// Position samples and request arrivals of one vehicle that the replay has read ahead,
+// at most one position update interval worth of them
+public class ReplayTrack implements ArrivalProcess {
+    int[] sampleTimes;
+    float[] samplePositions;
+    float[] sampleSpeeds;
+    int sampleHead;
+    int sampleCount;
+    int[] arrivalTimes;
+    int[] arrivalAppIds;
+    int arrivalHead;
+    int arrivalCount;
+
+    // Latest sample taken by pollSample
+    int time;
+    float position;
+    float speed; // m/s, negative towards ROAD_START
+
+    public ReplayTrack() {
+        this.sampleTimes = new int[4];
+        this.samplePositions = new float[4];
+        this.sampleSpeeds = new float[4];
+        this.arrivalTimes = new int[4];
+        this.arrivalAppIds = new int[4];
+    }
+
+    public void addSample(int time, float position, float speed) {
+        if (sampleHead + sampleCount == sampleTimes.length) {
+            // Compact before growing, consumed samples sit at the front
+            if (sampleHead > 0) {
+                System.arraycopy(sampleTimes, sampleHead, sampleTimes, 0, sampleCount);
+                System.arraycopy(samplePositions, sampleHead, samplePositions, 0, sampleCount);
+                System.arraycopy(sampleSpeeds, sampleHead, sampleSpeeds, 0, sampleCount);
+                sampleHead = 0;
+            }
+            else {
+                sampleTimes = Arrays.copyOf(sampleTimes, sampleTimes.length * 2);
+                samplePositions = Arrays.copyOf(samplePositions, samplePositions.length * 2);
+                sampleSpeeds = Arrays.copyOf(sampleSpeeds, sampleSpeeds.length * 2);
+            }
+        }
+        int i = sampleHead + sampleCount++;
+        sampleTimes[i] = time;
+        samplePositions[i] = position;
+        sampleSpeeds[i] = speed;
+    }
+
+    public void addArrival(int time, int appId) {
+        if (arrivalHead + arrivalCount == arrivalTimes.length) {
+            if (arrivalHead > 0) {
+                System.arraycopy(arrivalTimes, arrivalHead, arrivalTimes, 0, arrivalCount);
+                System.arraycopy(arrivalAppIds, arrivalHead, arrivalAppIds, 0, arrivalCount);
+                arrivalHead = 0;
+            }
+            else {
+                arrivalTimes = Arrays.copyOf(arrivalTimes, arrivalTimes.length * 2);
+                arrivalAppIds = Arrays.copyOf(arrivalAppIds, arrivalAppIds.length * 2);
+            }
+        }
+        int i = arrivalHead + arrivalCount++;
+        arrivalTimes[i] = time;
+        arrivalAppIds[i] = appId;
+    }
+
+    // Takes every sample up to currentTime, true if there was any
+    public boolean pollSample(int currentTime) {
+        boolean polled = false;
+        while (sampleCount > 0 && sampleTimes[sampleHead] <= currentTime) {
+            time = sampleTimes[sampleHead];
+            position = samplePositions[sampleHead];
+            speed = sampleSpeeds[sampleHead];
+            sampleHead++;
+            sampleCount--;
+            polled = true;
+        }
+        if (sampleCount == 0) sampleHead = 0;
+        return polled;
+    }
+
+    public int getArrivalTime() {
+        return arrivalCount > 0 ? arrivalTimes[arrivalHead] : Integer.MAX_VALUE;
+    }
+
+    public int getAppId() {
+        return arrivalAppIds[arrivalHead];
+    }
+
+    public void advance(int time) {
+        while (arrivalCount > 0 && arrivalTimes[arrivalHead] <= time) {
+            arrivalHead++;
+            arrivalCount--;
+        }
+        if (arrivalCount == 0) arrivalHead = 0;
+    }
+}
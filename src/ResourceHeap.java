@@ -0,0 +1,120 @@
+import java.util.*;
+
+// Members of a cloud ordered by free resource, most first and ties broken by smaller id.
+// A binary heap in two int arrays, with each member's slot kept in an IntIntHashMap,
+// so a member's resource can be changed or the member removed in O(log n) without allocating.
+public class ResourceHeap {
+    private int[] ids;
+    private int[] resources;
+    private int size;
+    private final IntIntHashMap slots; // Member id to heap slot
+
+    public ResourceHeap() {
+        this.ids = new int[8];
+        this.resources = new int[8];
+        this.size = 0;
+        this.slots = new IntIntHashMap(8, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return slots.containsKey(id);
+    }
+
+    public int get(int id) {
+        int slot = slots.get(id);
+        assert slot >= 0 : "Member " + id + " not in heap";
+        return resources[slot];
+    }
+
+    // Member with the most free resource
+    public int peekId() {
+        return ids[0];
+    }
+
+    public int peekResource() {
+        return resources[0];
+    }
+
+    // Members in heap order, for printing
+    public int getIdAt(int slot) {
+        return ids[slot];
+    }
+
+    public int getResourceAt(int slot) {
+        return resources[slot];
+    }
+
+    public void add(int id, int resource) {
+        assert !contains(id);
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            resources = Arrays.copyOf(resources, size * 2);
+        }
+        ids[size] = id;
+        resources[size] = resource;
+        slots.put(id, size);
+        siftUp(size++);
+    }
+
+    public void set(int id, int resource) {
+        int slot = slots.get(id);
+        assert slot >= 0 : "Member " + id + " not in heap";
+        int oldResource = resources[slot];
+        resources[slot] = resource;
+        if (resource > oldResource) siftUp(slot);
+        else siftDown(slot);
+    }
+
+    public void remove(int id) {
+        int slot = slots.get(id);
+        if (slot < 0) return;
+        slots.remove(id);
+        size--;
+        if (slot == size) return;
+        ids[slot] = ids[size];
+        resources[slot] = resources[size];
+        slots.put(ids[slot], slot);
+        siftUp(slot);
+        siftDown(slots.get(ids[slot]));
+    }
+
+    private boolean isBefore(int slot, int otherSlot) {
+        if (resources[slot] != resources[otherSlot]) return resources[slot] > resources[otherSlot];
+        return ids[slot] < ids[otherSlot];
+    }
+
+    private void swap(int slot, int otherSlot) {
+        int id = ids[slot];
+        int resource = resources[slot];
+        ids[slot] = ids[otherSlot];
+        resources[slot] = resources[otherSlot];
+        ids[otherSlot] = id;
+        resources[otherSlot] = resource;
+        slots.put(ids[slot], slot);
+        slots.put(ids[otherSlot], otherSlot);
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!isBefore(slot, parent)) break;
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isBefore(child + 1, child)) child++;
+            if (!isBefore(child, slot)) break;
+            swap(slot, child);
+            slot = child;
+        }
+    }
+}
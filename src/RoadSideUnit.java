@@ -1,22 +1,25 @@
 import java.util.*;
-import java.util.concurrent.*;
 
-public class RoadSideUnit implements Callable<Integer> {
+public class RoadSideUnit implements Node {
     int id;
     float position;
     int currentTime;
     int channelId;
     Queue<Packet> transmitQueue;
     Queue<Packet> receiveQueue;
-    int readTillIndex;
+    Channel.ReadCursor readCursor;
     Map<Integer, Cloud> clouds;
     Simulator simulatorRef;
+    Config config;
     Medium mediumRef;
     int backoffTime;
     int contentionWindowSize;
+    SplittableRandom random; // Stream of this entity only, split from the run seed
 
     public RoadSideUnit(int id, float position, Simulator simulatorRef, Medium mediumRef) {
         this.id = id;
+        this.config = simulatorRef.config;
+        this.random = simulatorRef.splitRandom();
         this.position = position;
         this.currentTime = 0;
         this.simulatorRef = simulatorRef;
@@ -24,10 +27,10 @@ public class RoadSideUnit implements Callable<Integer> {
         this.channelId = 0;
         this.transmitQueue = new LinkedList<Packet>();
         this.receiveQueue = new LinkedList<Packet>();
-        this.readTillIndex = 0;
+        this.readCursor = mediumRef.channels[channelId].newReadCursor();
         this.clouds = new HashMap<Integer, Cloud>();
         this.backoffTime = 0;
-        this.contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
+        this.contentionWindowSize = config.CONTENTION_WINDOW_BASE;
         // System.out.println("RSU     " + id + " initialised at position " + this.position);
     }
 
@@ -53,7 +56,9 @@ public class RoadSideUnit implements Callable<Integer> {
     public void handleRREP(Packet donorPacket) {
         Cloud cloud = clouds.get(donorPacket.appId);
         if (cloud == null) {
-            System.out.println("No cloud present for app " + donorPacket.appId);
+            if (simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.DEBUG)) {
+                simulatorRef.log.debug("No cloud present for app %d", donorPacket.appId);
+            }
             return;
         }
         if (!cloud.isCloudLeader(id)) {
@@ -90,49 +95,66 @@ public class RoadSideUnit implements Callable<Integer> {
         }
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public float getPosition() {
+        return position;
+    }
+
+    public void setCurrentTime(int time) {
+        currentTime = time;
+    }
+
+    public int getNextWakeTime() {
+        // RSU's only act on received packets, apart from sending what they queued
+        if (!transmitQueue.isEmpty()) return currentTime;
+        return Integer.MAX_VALUE;
+    }
+
+    // Contend for the channel in this interval if a packet is waiting and backoff has expired
+    public void declareTransmitIntent() {
+        if (transmitQueue.isEmpty() || backoffTime > 0) return;
+        Channel targetChannel = mediumRef.channels[channelId];
+        targetChannel.declareTransmitIntent(id, position, random.nextInt());
+    }
+
     public Integer call() {
         // System.out.println("RSU     " + id + " starting interval " + currentTime);
         Channel targetChannel = mediumRef.channels[channelId];
         
+        // Attempt to transmit packets in transmitQueue only if there are any pending packets,
+        // contention for this interval was settled by the channel before any entity ran
         if (!transmitQueue.isEmpty()) {
-            if (targetChannel.isFree(id, position)) {
-                Packet packet = transmitQueue.poll();
-                targetChannel.transmitPacket(packet, currentTime, position);
+            if (backoffTime == 0) {
+                if (targetChannel.hasWonContention(id, position)) {
+                    Packet packet = transmitQueue.poll();
+                    targetChannel.transmitPacket(packet, currentTime, position);
+                    // Reset contention window
+                    contentionWindowSize = config.CONTENTION_WINDOW_BASE;
+                }
+                else {
+                    contentionWindowSize *= 2;
+                    if (contentionWindowSize > config.CONTENTION_WINDOW_MAX) {
+                        if (simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.DEBUG)) {
+                            simulatorRef.log.debug("RSU %d could not transmit in backoff, retrying again", id);
+                        }
+                        backoffTime = 0;
+                        contentionWindowSize = config.CONTENTION_WINDOW_BASE;
+                    }
+                    else {
+                        backoffTime = random.nextInt(contentionWindowSize) + 1;
+                    }
+                }
+            }
+            else if (targetChannel.isFree(position)) {
+                backoffTime--;
             }
         }
-        // Attempt to transmit packets in transmitQueue only if there are any pending packets
-        // if (!transmitQueue.isEmpty()) {
-        //     if (backoffTime == 0) {
-        //         if (targetChannel.isFree(id, position)) {
-        //             Packet packet = transmitQueue.poll();
-        //             targetChannel.transmitPacket(packet, currentTime, position);
-        //             targetChannel.stopTransmit(id);
-        //             // Reset contention window
-        //             contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
-        //         }
-        //         else {
-        //             contentionWindowSize *= 2;
-        //             if (contentionWindowSize > Config.CONTENTION_WINDOW_MAX) {
-        //                 System.out.println("Vehicle could not transmit in backoff, retrying again");
-        //                 backoffTime = 0;
-        //                 contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
-        //             }
-        //             else {
-        //                 backoffTime = ThreadLocalRandom.current().nextInt(contentionWindowSize) + 1;
-        //             }
-        //         }
-        //     }
-        //     else {
-        //         if (targetChannel.isFree(id, position)) {
-        //             backoffTime--;
-        //             targetChannel.stopTransmit(id);
-        //         }
-        //     }
-        // }
 
         // Also get and process receivedPackets
-        int newPacketCount = targetChannel.receivePackets(id, readTillIndex, currentTime, position, receiveQueue); 
-        readTillIndex += newPacketCount;
+        targetChannel.receivePackets(id, readCursor, currentTime, position, receiveQueue);
         while (!receiveQueue.isEmpty()) {
             Packet p = receiveQueue.poll();
             assert p != null : "Read packet is NULL";                      
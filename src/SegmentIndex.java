@@ -0,0 +1,67 @@
+import java.util.*;
+
+// Node indices grouped by segment, one growable int array per segment. A node is moved
+// between segments by swap-removal, so keeping the index current costs only the nodes that
+// changed segment and allocates nothing once the arrays have grown. Order within a segment
+// is not kept.
+public class SegmentIndex {
+    int[][] segmentNodes;
+    int[] segmentSizes;
+    int[] nodeSegment; // Segment of each node, -1 if not indexed
+    int[] nodeSlot;    // Position of each node in its segment's array
+
+    public SegmentIndex(int segmentCount, int nodeCount) {
+        this.segmentNodes = new int[segmentCount][8];
+        this.segmentSizes = new int[segmentCount];
+        this.nodeSegment = new int[nodeCount];
+        this.nodeSlot = new int[nodeCount];
+        Arrays.fill(nodeSegment, -1);
+    }
+
+    public int size(int segmentId) {
+        return segmentSizes[segmentId];
+    }
+
+    // Node in the given slot of a segment, slots run from 0 to size(segmentId) - 1
+    public int get(int segmentId, int slot) {
+        return segmentNodes[segmentId][slot];
+    }
+
+    public void add(int node, int segmentId) {
+        assert (nodeSegment[node] < 0) : "Node " + node + " already indexed";
+        int size = segmentSizes[segmentId];
+        if (size == segmentNodes[segmentId].length) {
+            segmentNodes[segmentId] = Arrays.copyOf(segmentNodes[segmentId], 2 * size);
+        }
+        segmentNodes[segmentId][size] = node;
+        segmentSizes[segmentId] = size + 1;
+        nodeSegment[node] = segmentId;
+        nodeSlot[node] = size;
+    }
+
+    public void remove(int node) {
+        int segmentId = nodeSegment[node];
+        if (segmentId < 0) return;
+        int last = --segmentSizes[segmentId];
+        int movedNode = segmentNodes[segmentId][last];
+        segmentNodes[segmentId][nodeSlot[node]] = movedNode;
+        nodeSlot[movedNode] = nodeSlot[node];
+        nodeSegment[node] = -1;
+    }
+
+    public void move(int node, int segmentId) {
+        if (nodeSegment[node] == segmentId) return;
+        remove(node);
+        add(node, segmentId);
+    }
+
+    // Empties every segment
+    public void clear() {
+        for (int segmentId = 0; segmentId < segmentSizes.length; segmentId++) {
+            for (int slot = 0; slot < segmentSizes[segmentId]; slot++) {
+                nodeSegment[segmentNodes[segmentId][slot]] = -1;
+            }
+            segmentSizes[segmentId] = 0;
+        }
+    }
+}
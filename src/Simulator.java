@@ -1,7 +1,9 @@
 import java.io.*;
+import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.text.DecimalFormat;
 
 public class Simulator {
@@ -10,40 +12,65 @@ public class Simulator {
     int vehiclesPerSegment;
     int totalVehicleCount;
     int averageVehicleSpeed;
+    int segmentCount;
     ArrayList<Vehicle> vehicles;
+    VehicleKinematics kinematics;
     ArrayList<RoadSideUnit> roadSideUnits;
+    ArrayList<Node> nodes; // RSU's followed by vehicles
     Medium medium;
     DecimalFormat decimalFormat;
-    FileWriter csvFileWriter;
-
+    Config config;
+    Logger log;
+    TraceRecorder trace; // Null unless tracing
+    TraceReplay replay; // Null unless replaying
+    MetricsSampler metrics; // Null unless sampling
+    SplittableRandom random;
+    AtomicReference<Throwable> nodeFailure; // First failure of a node run by another thread
+
+    // Counters of one packet type. Every thread counts into its own set,
+    // the sets are only added up when statistics are reported.
     public class PacketStat {
         Config.PACKET_TYPE type;
-        AtomicInteger generatedCount;
-        AtomicInteger transmittedCount;
-        AtomicInteger receivedCount;
-        AtomicInteger totalTransmitTime;
-        AtomicInteger totalReceiveTime;
+        long generatedCount;
+        long transmittedCount;
+        long receivedCount;
+        long totalTransmitTime;
+        long totalReceiveTime;
+        LatencyHistogram transmitTimes;
+        LatencyHistogram receiveTimes;
 
         public PacketStat(Config.PACKET_TYPE type) {
             this.type = type;
-            this.generatedCount = new AtomicInteger();
-            this.transmittedCount = new AtomicInteger();
-            this.receivedCount = new AtomicInteger();
-            this.totalTransmitTime = new AtomicInteger();
-            this.totalReceiveTime = new AtomicInteger();
+            this.transmitTimes = new LatencyHistogram();
+            this.receiveTimes = new LatencyHistogram();
+        }
+
+        public void add(PacketStat other) {
+            generatedCount += other.generatedCount;
+            transmittedCount += other.transmittedCount;
+            receivedCount += other.receivedCount;
+            totalTransmitTime += other.totalTransmitTime;
+            totalReceiveTime += other.totalReceiveTime;
+            transmitTimes.add(other.transmitTimes);
+            receiveTimes.add(other.receiveTimes);
         }
 
         public void printStatistics() {
-            System.out.println("-----------------------------------------");
-            System.out.println("Packet type " + type);
-            System.out.println("Total packets generated = " + generatedCount);
-            System.out.println("Total packets transmitted = " + transmittedCount);
-            System.out.println("Total packets received = " + receivedCount);
-            System.out.println("Average transmit time in ms = " + decimalFormat.format(totalTransmitTime.floatValue() / transmittedCount.intValue()));
-            System.out.println("Average receive time in ms = " + decimalFormat.format(totalReceiveTime.floatValue() / receivedCount.intValue()));
+            log.info("-----------------------------------------");
+            log.info("Packet type %s", type);
+            log.info("Total packets generated = %d", generatedCount);
+            log.info("Total packets transmitted = %d", transmittedCount);
+            log.info("Total packets received = %d", receivedCount);
+            log.info("Average transmit time in ms = %s", decimalFormat.format((double) totalTransmitTime / transmittedCount));
+            log.info("Average receive time in ms = %s", decimalFormat.format((double) totalReceiveTime / receivedCount));
+            printPercentiles("Transmit", transmitTimes);
+            printPercentiles("Receive", receiveTimes);
         }
     }
-    Map<Config.PACKET_TYPE, PacketStat> packetStats;
+    ThreadLocal<PacketStat[]> localPacketStats; // By type ordinal, unset until the thread first counts a packet
+    Set<PacketStat[]> threadPacketStats; // Of the running threads and releasedPacketStats
+    PacketStat[] releasedPacketStats; // Sum over the threads that have ended, see releaseThreadState
+    Map<Config.PACKET_TYPE, PacketStat> packetStats; // Sum over threads, filled by mergePacketStats
     AtomicInteger totalCloudsFormedSelf;
     AtomicInteger totalCloudsFormationTimeSelf;
     AtomicInteger totalCloudsFormedRSU;
@@ -55,24 +82,27 @@ public class Simulator {
     AtomicInteger leaderLeaveCount;
     AtomicInteger rrepReceivecCount;
 
-    public Simulator(int givenVehiclePerSegment, int givenAverageVehicleSpeed, FileWriter fw) {
+    public Simulator(Config givenConfig, int givenVehiclePerSegment, int givenAverageVehicleSpeed, Logger givenLog, TraceRecorder givenTrace) {
+        config = givenConfig;
+        log = givenLog;
+        trace = givenTrace;
         currentTime = 0;
-        stopTime = Config.STOP_TIME;
-        int segmentCount = (int) Math.ceil(Config.ROAD_END / Config.SEGMENT_LENGTH);
+        stopTime = config.STOP_TIME;
+        segmentCount = (int) Math.ceil(config.ROAD_END / config.SEGMENT_LENGTH);
         totalVehicleCount = givenVehiclePerSegment * segmentCount;
         vehiclesPerSegment = givenVehiclePerSegment;
         averageVehicleSpeed = givenAverageVehicleSpeed;
-        medium = new Medium();
+        medium = new Medium(config, trace);
+        random = new SplittableRandom(config.RANDOM_SEED);
 
         decimalFormat = new DecimalFormat();
         decimalFormat.setMaximumFractionDigits(4);
-        csvFileWriter = fw;
 
+        threadPacketStats = ConcurrentHashMap.newKeySet();
+        releasedPacketStats = newPacketStats();
+        threadPacketStats.add(releasedPacketStats);
+        localPacketStats = new ThreadLocal<PacketStat[]>();
         packetStats = new HashMap<Config.PACKET_TYPE, PacketStat>();
-        for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
-            packetStats.put(type, new PacketStat(type));
-
-        }
         totalCloudsFormedSelf = new AtomicInteger();
         totalCloudsFormationTimeSelf = new AtomicInteger();
         totalCloudsFormedRSU = new AtomicInteger();
@@ -81,10 +111,21 @@ public class Simulator {
         totalRequestsQueued = new AtomicInteger();
         
         leaderChangeCount = new AtomicInteger();
+        nodeFailure = new AtomicReference<Throwable>();
         leaderLeaveCount = new AtomicInteger();
         rrepReceivecCount = new AtomicInteger();
 
-        // Spawn vehicles at random positions
+        if (config.REPLAY_PATH != null) {
+            try {
+                replay = new TraceReplay(config, totalVehicleCount);
+                replay.dispatchUntil(config.POSITION_UPDATE_INTERVAL - 1);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        // Spawn vehicles at random positions, or where the replay puts them
+        kinematics = new VehicleKinematics(config, totalVehicleCount);
         vehicles  = new ArrayList<Vehicle>();
         for (int i = 1; i <= totalVehicleCount; i++) {
             // givenAverageVehicleSpeed * 0.277 is to convert km/h to m/s
@@ -93,32 +134,90 @@ public class Simulator {
 
         // Spawn RSU's in the mid of each (implicit) segment
         roadSideUnits = new ArrayList<RoadSideUnit>();
-        float rsuPosition = Config.SEGMENT_LENGTH * 0.5f;
+        float rsuPosition = config.SEGMENT_LENGTH * 0.5f;
         int rsuId = 1;
-        while (rsuPosition < Config.ROAD_END) {
+        while (rsuPosition < config.ROAD_END) {
             if (rsuId % 2 == 1) { // Position RSU's at alternate segments
                 roadSideUnits.add(new RoadSideUnit(-1 * rsuId, rsuPosition, this, medium));
             }
-            rsuPosition += Config.SEGMENT_LENGTH;
+            rsuPosition += config.SEGMENT_LENGTH;
             rsuId++;
         }
-        System.out.println("Simulation Initialised");    
+        nodes = new ArrayList<Node>(roadSideUnits.size() + vehicles.size());
+        nodes.addAll(roadSideUnits);
+        nodes.addAll(vehicles);
+        segmentIndex = new SegmentIndex(segmentCount, nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            segmentIndex.add(i, medium.getChannel(0).getSegmentId(nodes.get(i).getPosition()));
+        }
+        dueIndex = new SegmentIndex(segmentCount, nodes.size());
+        log.info("Simulation Initialised");
+    }
+
+    // Entities take their streams in creation order on the simulator thread, so a given
+    // seed and configuration reproduce the same statistics regardless of the engine and its
+    // thread count. Log lines of different threads may still be written in a different order.
+    public SplittableRandom splitRandom() {
+        return random.split();
+    }
+
+    public void setMetricsSampler(MetricsSampler sampler) {
+        metrics = sampler;
+    }
+
+    private PacketStat[] localStats() {
+        PacketStat[] stats = localPacketStats.get();
+        if (stats == null) {
+            stats = newPacketStats();
+            threadPacketStats.add(stats);
+            localPacketStats.set(stats);
+        }
+        return stats;
     }
 
     public void incrGenCount(Config.PACKET_TYPE type) {
-        packetStats.get(type).generatedCount.incrementAndGet();
+        localStats()[type.ordinal()].generatedCount++;
     }
 
     public void recordTransmission(Config.PACKET_TYPE type, int transmitTime) {
         assert (transmitTime >= 0) : "Negative transmission time encountered for a packet.";
-        packetStats.get(type).transmittedCount.incrementAndGet();
-        packetStats.get(type).totalTransmitTime.addAndGet(transmitTime);
+        PacketStat stat = localStats()[type.ordinal()];
+        stat.transmittedCount++;
+        stat.totalTransmitTime += transmitTime;
+        stat.transmitTimes.record(transmitTime);
     }
 
     public void recordReception(Config.PACKET_TYPE type, int receiveTime) {
         assert (receiveTime >= 0) : "Negative receive time encountered for a packet.";
-        packetStats.get(type).receivedCount.incrementAndGet();
-        packetStats.get(type).totalReceiveTime.addAndGet(receiveTime);
+        PacketStat stat = localStats()[type.ordinal()];
+        stat.receivedCount++;
+        stat.totalReceiveTime += receiveTime;
+        stat.receiveTimes.record(receiveTime);
+    }
+
+    private PacketStat[] newPacketStats() {
+        PacketStat[] stats = new PacketStat[Config.PACKET_TYPE.values().length];
+        for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
+            stats[type.ordinal()] = new PacketStat(type);
+        }
+        return stats;
+    }
+
+    // Adds up the per thread counters into packetStats, only once no entity runs
+    private void mergePacketStats() {
+        packetStats.clear();
+        for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
+            PacketStat total = new PacketStat(type);
+            for (PacketStat[] stats : threadPacketStats) {
+                total.add(stats[type.ordinal()]);
+            }
+            packetStats.put(type, total);
+        }
+    }
+
+    private void printPercentiles(String name, LatencyHistogram histogram) {
+        log.info("%s time in ms p50 = %d, p99 = %d, max = %d", name,
+            histogram.getPercentile(0.50), histogram.getPercentile(0.99), histogram.getMax());
     }
 
     public void recordCloudFormed(int formationTime, boolean formedByRSU) {
@@ -157,53 +256,51 @@ public class Simulator {
         rrepReceivecCount.incrementAndGet();
     }
 
-    public void printStatistics() {
-        int totalGeneratedCount = 0;
-        int totalTransmittedCount = 0;
-        int totalReceivedCount = 0;
-        int totalTransmitTime = 0;
-        int totalReceiveTime = 0;
-
+    // Prints the end of run statistics to the log and returns them as a plot.csv row
+    public String printStatistics() {
+        mergePacketStats();
+        PacketStat total = new PacketStat(null);
         for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
             packetStats.get(type).printStatistics();
-            totalGeneratedCount += packetStats.get(type).generatedCount.intValue();
-            totalTransmittedCount += packetStats.get(type).transmittedCount.intValue();
-            totalReceivedCount += packetStats.get(type).receivedCount.intValue();
-            totalTransmitTime += packetStats.get(type).totalTransmitTime.intValue();
-            totalReceiveTime += packetStats.get(type).totalReceiveTime.intValue();
-        }
-        System.out.println("-----------------------------------------");
-        System.out.println("All packet types");
-        System.out.println("Total packets generated = " + totalGeneratedCount);
-        System.out.println("Total packets transmitted = " + totalTransmittedCount);
-        System.out.println("Total packets received = " + totalReceivedCount);
-        System.out.println("Average transmit time in ms = " + decimalFormat.format(((float) totalTransmitTime) / totalTransmittedCount));
-        System.out.println("Average receive time in ms = " + decimalFormat.format(((float) totalReceiveTime) / totalReceivedCount));
-    
+            total.add(packetStats.get(type));
+        }
+        long totalGeneratedCount = total.generatedCount;
+        long totalTransmittedCount = total.transmittedCount;
+        long totalReceivedCount = total.receivedCount;
+        long totalTransmitTime = total.totalTransmitTime;
+        long totalReceiveTime = total.totalReceiveTime;
+        log.info("-----------------------------------------");
+        log.info("All packet types");
+        log.info("Total packets generated = %d", totalGeneratedCount);
+        log.info("Total packets transmitted = %d", totalTransmittedCount);
+        log.info("Total packets received = %d", totalReceivedCount);
+        log.info("Average transmit time in ms = %s", decimalFormat.format(((double) totalTransmitTime) / totalTransmittedCount));
+        log.info("Average receive time in ms = %s", decimalFormat.format(((double) totalReceiveTime) / totalReceivedCount));
+        printPercentiles("Transmit", total.transmitTimes);
+        printPercentiles("Receive", total.receiveTimes);
         float averageClusterOverhead = 
             totalTransmittedCount
-            - packetStats.get(Config.PACKET_TYPE.PSTART).transmittedCount.intValue()
-            - packetStats.get(Config.PACKET_TYPE.PDONE).transmittedCount.intValue();
+            - packetStats.get(Config.PACKET_TYPE.PSTART).transmittedCount
+            - packetStats.get(Config.PACKET_TYPE.PDONE).transmittedCount;
         averageClusterOverhead /= totalTransmittedCount;
         float averageCloudFormationTimeSelf = totalCloudsFormationTimeSelf.floatValue() / totalCloudsFormedSelf.intValue();
         float averageCloudFormationTimeRSU = totalCloudsFormationTimeRSU.floatValue() / totalCloudsFormedRSU.intValue();
-        System.out.println("-----------------------------------------");
-        System.out.println("Average cluster overhead = " + decimalFormat.format(averageClusterOverhead));
-        System.out.println("Total clouds formed by RSU = " + totalCloudsFormedRSU);
-        System.out.println("Average cloud formation time (ms) by RSU = " + decimalFormat.format(averageCloudFormationTimeRSU));
-        System.out.println("Total clouds formed distributedly = " + totalCloudsFormedSelf);
-        System.out.println("Average cloud formation time (ms) distributedly = " + decimalFormat.format(averageCloudFormationTimeSelf));
-        System.out.println("Total requests serviced = " + totalRequestsServiced);
-        System.out.println("Total requests still queued = " + totalRequestsQueued);
-        System.out.println("Leader change count = " + leaderChangeCount);
-        System.out.println("Leader leave count = " + leaderLeaveCount);
-        System.out.println("RREP received by leader/RSU = " + rrepReceivecCount);
-
+        log.info("-----------------------------------------");
+        log.info("Average cluster overhead = %s", decimalFormat.format(averageClusterOverhead));
+        log.info("Total clouds formed by RSU = %s", totalCloudsFormedRSU);
+        log.info("Average cloud formation time (ms) by RSU = %s", decimalFormat.format(averageCloudFormationTimeRSU));
+        log.info("Total clouds formed distributedly = %s", totalCloudsFormedSelf);
+        log.info("Average cloud formation time (ms) distributedly = %s", decimalFormat.format(averageCloudFormationTimeSelf));
+        log.info("Total requests serviced = %s", totalRequestsServiced);
+        log.info("Total requests still queued = %s", totalRequestsQueued);
+        log.info("Leader change count = %s", leaderChangeCount);
+        log.info("Leader leave count = %s", leaderLeaveCount);
+        log.info("RREP received by leader/RSU = %s", rrepReceivecCount);
         String csvRow = String.format(
             "%d\t%d\t%d\t%d\t%d\t%s\t%d\t%s\t%d\t%s\t%d\n",
             vehiclesPerSegment,
             averageVehicleSpeed,
-            packetStats.get(Config.PACKET_TYPE.RREQ).generatedCount.intValue() + packetStats.get(Config.PACKET_TYPE.RJOIN).generatedCount.intValue(),
+            packetStats.get(Config.PACKET_TYPE.RREQ).generatedCount + packetStats.get(Config.PACKET_TYPE.RJOIN).generatedCount,
             totalRequestsServiced.intValue(),
             totalRequestsQueued.intValue(),
             decimalFormat.format(averageClusterOverhead),
@@ -213,12 +310,6 @@ public class Simulator {
             decimalFormat.format(averageCloudFormationTimeSelf),
             leaderChangeCount.intValue()
         );
-        try {
-            csvFileWriter.write(csvRow);
-            csvFileWriter.flush();
-        } catch (IOException ioe) {
-            System.err.println("IOException: " + ioe.getMessage());
-        } 
 
         System.err.printf(
             "Simulation with density %d and average speed %d km/h finished. Leader changed %d times out of %d times leader left.\n",
@@ -227,6 +318,7 @@ public class Simulator {
             leaderChangeCount.intValue(),
             leaderLeaveCount.intValue()
         );
+        return csvRow;
     }
 
     // public void runOld() {
@@ -252,73 +344,132 @@ public class Simulator {
     //     System.out.println("Simulation Finished after " + stopTime + " ms");
     // }
 
-    private class Entity {
-        int id;
-        int index;
-        float position;
+    SegmentIndex segmentIndex; // Indices in nodes of every node by segment, moved as vehicles change segment
+    SegmentIndex dueIndex; // Nodes due in this interval by segment, for the event driven engines
 
-        public Entity(RoadSideUnit rsu, int index) {
-            this.id = rsu.id;
-            this.index = index;
-            this.position = rsu.position;
+    private void startInterval() {
+        if (currentTime % 1000 == 0) {
+            log.info("Interval %d", currentTime);
         }
-        
-        public Entity(Vehicle vehicle, int index) {
-            this.id = vehicle.id;
-            this.index = index;
-            this.position = vehicle.position;
+        // Vehicles wake at every position update, so reading ahead until the next one
+        // hands them their samples and requests before they are due
+        if (replay != null && currentTime > 0 && currentTime % config.POSITION_UPDATE_INTERVAL == 0) {
+            try {
+                replay.dispatchUntil(currentTime + config.POSITION_UPDATE_INTERVAL - 1);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
         }
+    }
 
-        public int getSegmentId() {
-            return (int) (position / Config.SEGMENT_LENGTH);
+    // Work done by the simulator thread before any entity runs in this interval
+    void beginInterval() {
+        startInterval();
+
+        // Intent phase, contention is resolved before any entity runs so that
+        // its outcome does not depend on thread scheduling
+        for (Node node : nodes) {
+            node.declareTransmitIntent();
+        }
+        medium.getChannel(0).resolveContention();
+    }
+
+    // Moves all vehicles in one pass, only those that changed segment leave their clouds
+    // and move in segmentIndex
+    private void updateVehiclePositions() {
+        kinematics.update(currentTime);
+        Channel channel = medium.getChannel(0);
+        for (int i = 0; i < kinematics.changedCount; i++) {
+            int vehicleIndex = kinematics.changedVehicles[i];
+            vehicles.get(vehicleIndex).leaveSegment(currentTime);
+            segmentIndex.move(roadSideUnits.size() + vehicleIndex, channel.getSegmentId(kinematics.positions[vehicleIndex]));
+        }
+    }
+
+    // Work done by the simulator thread after every entity has run in this interval
+    void endInterval() {
+        if (currentTime % config.POSITION_UPDATE_INTERVAL == 0) {
+            updateVehiclePositions();
+        }
+        medium.getChannel(0).publishStagedPackets();
+        if (currentTime % config.PACKET_LOG_RECLAIM_INTERVAL == 0) {
+            medium.getChannel(0).reclaimConsumedPackets();
+        }
+        currentTime++;
+        if (metrics != null) {
+            try {
+                metrics.onIntervalEnd(currentTime);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
         }
     }
 
     public void run() { // Optimised run implementation
-        
-        Map<Integer, List<Entity>> segmentMap = new HashMap<Integer, List<Entity>>();
+        log.info("Simulation Started");
+        switch (config.ENGINE) {
+            case SEGMENT_WORKERS:
+                runSegmentWorkers(false);
+                break;
+            case EVENT_DRIVEN:
+                runSegmentWorkers(true);
+                break;
+            case ACTORS:
+                runActors();
+                break;
+            case THREAD_POOL:
+            default:
+                runThreadPool();
+                break;
+        }
+        if (replay != null) {
+            if (replay.skippedRowCount > 0) {
+                log.warn("Skipped %d replay rows of vehicles beyond %d", replay.skippedRowCount, totalVehicleCount);
+            }
+            try {
+                replay.close();
+            } catch (IOException ioe) {
+                System.err.println("IOException: " + ioe.getMessage());
+            }
+        }
+        log.flush(); // Keep what the workers logged ahead of the summary
+        log.info("Simulation Finished after %d ms", stopTime);
+    }
+
+    private void runThreadPool() {
+        // One task per segment runs that segment's nodes one after another, as the other
+        // engines do, since nodes of a segment share and change the same clouds
+        List<Callable<Integer>> segmentTasks = new ArrayList<Callable<Integer>>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentId = i;
+            segmentTasks.add(() -> {
+                for (int slot = 0; slot < segmentIndex.size(segmentId); slot++) {
+                    nodes.get(segmentIndex.get(segmentId, slot)).call();
+                }
+                return segmentId;
+            });
+        }
         List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
-        ExecutorService taskExecutor = Executors.newFixedThreadPool(vehiclesPerSegment * 2);
+        ExecutorService taskExecutor = Executors.newFixedThreadPool(config.WORKER_THREAD_COUNT);
         
-        System.out.println("Simulation Started");
         while (currentTime <= stopTime) {
-            if (currentTime % 1000 == 0) {
-                System.out.println("Interval " + currentTime);
-            }
-            if (currentTime == 0 || currentTime % 50 == 1) {
-                segmentMap.clear();
-                for (int i = 0; i < roadSideUnits.size(); i++) {
-                    Entity entity = new Entity(roadSideUnits.get(i), i);
-                    int segmentId = entity.getSegmentId();
-                    if (!segmentMap.containsKey(segmentId)) {
-                        segmentMap.put(segmentId, new LinkedList<Entity>());
-                    }
-                    segmentMap.get(segmentId).add(entity);
-                }
-                for (int i = 0; i < totalVehicleCount; i++) {
-                    Entity entity = new Entity(vehicles.get(i), i);
-                    int segmentId = entity.getSegmentId();
-                    if (!segmentMap.containsKey(segmentId)) {
-                        segmentMap.put(segmentId, new LinkedList<Entity>());
-                    }
-                    segmentMap.get(segmentId).add(entity);
-                }
-            }
-            
-            for (List<Entity> elist : segmentMap.values()) {
+            beginInterval();
+            // Segments of one colour are at least SEGMENT_COLOUR_COUNT apart and cannot
+            // affect each other within an interval, so each colour runs as one batch
+            for (int colour = 0; colour < config.SEGMENT_COLOUR_COUNT; colour++) {
                 tasks.clear();
-                Collections.shuffle(elist);
-                for (Entity entity : elist) {
-                    if (entity.id > 0) {
-                        tasks.add(vehicles.get(entity.index));
-                    }
-                    else {
-                        tasks.add(roadSideUnits.get(entity.index));
-                    }
+                for (int segmentId = colour; segmentId < segmentCount; segmentId += config.SEGMENT_COLOUR_COUNT) {
+                    if (segmentIndex.size(segmentId) > 0) tasks.add(segmentTasks.get(segmentId));
                 }
                 try {
-                    assert(tasks.size() <= 2 * vehiclesPerSegment);
-                    taskExecutor.invokeAll(tasks);
+                    for (Future<Integer> result : taskExecutor.invokeAll(tasks)) {
+                        try {
+                            result.get();
+                        }
+                        catch (ExecutionException e) {
+                            recordNodeFailure(e.getCause());
+                        }
+                    }
                 } 
                 catch (InterruptedException e) {
                     System.err.printf(
@@ -330,47 +481,330 @@ public class Simulator {
                     e.printStackTrace(System.err);
                 }
             }
-            medium.getChannel(0).clearTransmitterPositions();
-            currentTime++;
+            if (nodeFailure.get() != null) break;
+            endInterval();
         }
         taskExecutor.shutdown();
-        System.out.println("Simulation Finished after " + stopTime + " ms");
+        rethrowNodeFailure();
     }
 
-    public static void main(String[] args) {
+    // Long-lived worker owning every WORKER_THREAD_COUNT-th segment of each colour.
+    // Workers and the simulator thread meet at intervalSync once before the interval
+    // and once after each colour.
+    private class SegmentWorker implements Runnable {
+        int index;
+        int workerCount;
+        Phaser intervalSync;
+        SegmentIndex runIndex; // Nodes to run in each interval
+
+        public SegmentWorker(int index, int workerCount, Phaser intervalSync, SegmentIndex runIndex) {
+            this.index = index;
+            this.workerCount = workerCount;
+            this.intervalSync = intervalSync;
+            this.runIndex = runIndex;
+        }
+
+        // A failing node, assertions included, is recorded and the worker keeps arriving at
+        // intervalSync, so the simulator thread stops the run instead of waiting forever
+        public void run() {
+            int stride = config.SEGMENT_COLOUR_COUNT * workerCount;
+            try {
+                while (true) {
+                    intervalSync.arriveAndAwaitAdvance();
+                    if (currentTime > stopTime || nodeFailure.get() != null) break;
+                    for (int colour = 0; colour < config.SEGMENT_COLOUR_COUNT; colour++) {
+                        for (int segmentId = colour + index * config.SEGMENT_COLOUR_COUNT; segmentId < segmentCount; segmentId += stride) {
+                            for (int slot = 0; slot < runIndex.size(segmentId); slot++) {
+                                try {
+                                    nodes.get(runIndex.get(segmentId, slot)).call();
+                                }
+                                catch (Throwable t) {
+                                    recordNodeFailure(t);
+                                }
+                            }
+                        }
+                        intervalSync.arriveAndAwaitAdvance();
+                    }
+                }
+            }
+            catch (Throwable t) {
+                recordNodeFailure(t);
+            }
+            finally {
+                releaseThreadState();
+                intervalSync.arriveAndDeregister();
+            }
+        }
+    }
+
+    // Keeps the first failure of a node for the simulator thread, later ones are only printed
+    private void recordNodeFailure(Throwable failure) {
+        if (!nodeFailure.compareAndSet(null, failure)) {
+            failure.printStackTrace(System.err);
+        }
+    }
+
+    // Hands what the calling thread buffered for the run back before the thread ends, so that
+    // one actor per node does not leave a log ring and packet statistics per node behind
+    private void releaseThreadState() {
+        log.releaseThread();
+        if (trace != null) trace.releaseThread();
+        PacketStat[] stats = localPacketStats.get();
+        if (stats == null) return;
+        localPacketStats.remove();
+        synchronized (releasedPacketStats) {
+            for (int i = 0; i < stats.length; i++) {
+                releasedPacketStats[i].add(stats[i]);
+            }
+            threadPacketStats.remove(stats);
+        }
+    }
+
+    // Called by the simulator thread once the workers have stopped
+    private void rethrowNodeFailure() {
+        Throwable failure = nodeFailure.get();
+        if (failure == null) return;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        throw new IllegalStateException("Node failed before time " + currentTime, failure);
+    }
+
+    private void runSegmentWorkers(boolean eventDriven) {
+        int workerCount = config.WORKER_THREAD_COUNT;
+        Phaser intervalSync = new Phaser(workerCount + 1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(new SegmentWorker(i, workerCount, intervalSync, eventDriven ? dueIndex : segmentIndex), "segment-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        TimingWheel wakeUps = null;
+        int[] dueNodes = null;
+        if (eventDriven) {
+            wakeUps = new TimingWheel(config.TIMING_WHEEL_SLOT_COUNT, nodes.size());
+            dueNodes = new int[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                wakeUps.schedule(i, currentTime);
+            }
+        }
+
+        while (currentTime <= stopTime) {
+            int dueCount = 0;
+            if (eventDriven) {
+                dueCount = beginEventDrivenInterval(wakeUps, dueNodes);
+            }
+            else {
+                beginInterval();
+            }
+            intervalSync.arriveAndAwaitAdvance(); // Release workers
+            for (int colour = 0; colour < config.SEGMENT_COLOUR_COUNT; colour++) {
+                intervalSync.arriveAndAwaitAdvance();
+            }
+            if (nodeFailure.get() != null) break;
+            // Positions are updated first, so that vehicles leaving a segment are woken to send their RLEAVE's
+            endInterval();
+            scheduleNextWakeUps(wakeUps, dueNodes, dueCount);
+        }
+        intervalSync.arriveAndAwaitAdvance(); // Workers observe the stop time or the failure and exit
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e) {
+            System.err.printf(
+                "Simulation with density %d and average speed %d interrupted while stopping workers.\n",
+                vehiclesPerSegment,
+                averageVehicleSpeed
+            );
+            e.printStackTrace(System.err);
+        }
+        rethrowNodeFailure();
+    }
+
+    // Event driven counterpart of beginInterval. Only the nodes that have work in this
+    // interval are handed to the workers: those whose own wake-up time has come and
+    // those in range of a segment that received packets. Returns their count.
+    private int beginEventDrivenInterval(TimingWheel wakeUps, int[] dueNodes) {
+        Channel channel = medium.getChannel(0);
+        startInterval();
+        if (currentTime > 0) {
+            // Wake receivers of the packets published at the end of the last interval
+            for (int segmentId = 0; segmentId < segmentCount; segmentId++) {
+                if (!channel.publishedSegments[segmentId]) continue;
+                for (int s = Math.max(0, segmentId - 1); s <= Math.min(segmentCount - 1, segmentId + 1); s++) {
+                    for (int slot = 0; slot < segmentIndex.size(s); slot++) {
+                        wakeUps.schedule(segmentIndex.get(s, slot), currentTime);
+                    }
+                }
+            }
+        }
+
+        dueIndex.clear();
+        int dueCount = wakeUps.pollDue(currentTime, dueNodes);
+        for (int i = 0; i < dueCount; i++) {
+            Node node = nodes.get(dueNodes[i]);
+            node.setCurrentTime(currentTime);
+            node.declareTransmitIntent();
+            dueIndex.add(dueNodes[i], channel.getSegmentId(node.getPosition()));
+        }
+        channel.resolveContention();
+        return dueCount;
+    }
+
+    private void scheduleNextWakeUps(TimingWheel wakeUps, int[] dueNodes, int dueCount) {
+        for (int i = 0; i < dueCount; i++) {
+            int wakeTime = nodes.get(dueNodes[i]).getNextWakeTime();
+            if (wakeTime <= stopTime) {
+                wakeUps.schedule(dueNodes[i], wakeTime);
+            }
+        }
+    }
+
+    // Message telling an actor to run one interval, a time past stopTime asks it to exit
+    private class IntervalTick {
+        int time;
+        CountDownLatch done;
+
+        public IntervalTick(int time, int actorCount) {
+            this.time = time;
+            this.done = new CountDownLatch(actorCount);
+        }
+    }
+
+    // A node running its own loop, blocked on its inbox until it is due
+    private class NodeActor implements Runnable {
+        Node node;
+        BlockingQueue<IntervalTick> inbox;
+
+        public NodeActor(Node node) {
+            this.node = node;
+            this.inbox = new ArrayBlockingQueue<IntervalTick>(1);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    IntervalTick tick;
+                    try {
+                        tick = inbox.take();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    if (tick.time > stopTime) return;
+                    // The tick is always counted down, a failure is left for the simulator thread
+                    try {
+                        node.call();
+                    }
+                    catch (Throwable t) {
+                        recordNodeFailure(t);
+                    }
+                    finally {
+                        tick.done.countDown();
+                    }
+                }
+            }
+            finally {
+                releaseThreadState();
+            }
+        }
+    }
+
+    // Virtual threads where the runtime has them (JDK 21+), small stack platform threads otherwise
+    private Thread newActorThread(Runnable actor, String name) {
         try {
-            String logDirectoryPath = Config.LOG_PATH + System.currentTimeMillis();
-            new File(logDirectoryPath).mkdirs();    
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            Thread thread = (Thread) unstarted.invoke(builder, actor);
+            thread.setName(name);
+            return thread;
+        }
+        catch (ReflectiveOperationException e) {
+            Thread thread = new Thread(null, actor, name, config.ACTOR_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 
-            // PrintStream console = System.out;
-            FileWriter fw = new FileWriter(logDirectoryPath + "/plot.csv", true);
-            fw.write("Average Vehicle Density\tAverage Vehicle Speed (km/h)\tRequests Generated\tRequests Serviced\tRequests Queued\tAverage Cluster Overhead (Ratio)\tClouds formed by RSU\tAverage Cloud Formation Time by RSU (ms)\tClouds formed Distributedly\tAverage Cloud Formation Time Distributedly (ms)\tLeader Change Count\n");
-            fw.flush();
+    // Every node is an actor, the simulator thread only plans intervals and
+    // messages the nodes that are due, as in the event driven engine.
+    private void runActors() {
+        List<NodeActor> actors = new ArrayList<NodeActor>(nodes.size());
+        List<Thread> actorThreads = new ArrayList<Thread>(nodes.size());
+        for (Node node : nodes) {
+            NodeActor actor = new NodeActor(node);
+            Thread thread = newActorThread(actor, "node-" + node.getId());
+            thread.start();
+            actors.add(actor);
+            actorThreads.add(thread);
+        }
+
+        TimingWheel wakeUps = new TimingWheel(config.TIMING_WHEEL_SLOT_COUNT, nodes.size());
+        int[] dueNodes = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            wakeUps.schedule(i, currentTime);
+        }
+        while (currentTime <= stopTime) {
+            int dueCount = beginEventDrivenInterval(wakeUps, dueNodes);
+            IntervalTick tick = new IntervalTick(currentTime, dueCount);
+            for (int i = 0; i < dueCount; i++) {
+                actors.get(dueNodes[i]).inbox.add(tick);
+            }
+            try {
+                tick.done.await();
+            }
+            catch (InterruptedException e) {
+                System.err.printf(
+                    "Simulation with density %d and average speed %d failed at time %d ms.\n",
+                    vehiclesPerSegment,
+                    averageVehicleSpeed,
+                    currentTime
+                );
+                e.printStackTrace(System.err);
+                break;
+            }
+            if (nodeFailure.get() != null) break;
+            // Positions are updated first, so that vehicles leaving a segment are woken to send their RLEAVE's
+            endInterval();
+            scheduleNextWakeUps(wakeUps, dueNodes, dueCount);
+        }
+        IntervalTick stop = new IntervalTick(stopTime + 1, 0);
+        for (NodeActor actor : actors) {
+            actor.inbox.add(stop);
+        }
+        // Actors release their state on the way out, wait for them so nothing is left behind
+        try {
+            for (Thread thread : actorThreads) {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rethrowNodeFailure();
+    }
+
+    public static void main(String[] args) {
+        try {
+            Config config = new Config();
+            String logDirectoryPath = config.LOG_PATH + System.currentTimeMillis();
+            SweepRunner sweep = new SweepRunner(config, logDirectoryPath);
 
             int avgVehicleSpeedKMPH = 60;
             for (int vehiclesPerSegment = 24; vehiclesPerSegment <= 24; vehiclesPerSegment += 4) {
-                String logFilePath = String.format("%s/%d_%d.log", logDirectoryPath, vehiclesPerSegment, avgVehicleSpeedKMPH);
-                PrintStream logFile = new PrintStream(new File(logFilePath));
-                System.setOut(logFile);
-                
-                Simulator simulator = new Simulator(vehiclesPerSegment, avgVehicleSpeedKMPH, fw);
-                simulator.run();
-                simulator.printStatistics();
+                sweep.addRun(vehiclesPerSegment, avgVehicleSpeedKMPH);
             }
 
             // int averageVehiclePerSegment = 24;
             // for (int vehicleSpeedKMPH = 30; vehicleSpeedKMPH <= 90; vehicleSpeedKMPH += 10) {
-            //     String logFilePath = String.format("%s/%d_%d.log", logDirectoryPath, averageVehiclePerSegment, vehicleSpeedKMPH);
-            //     PrintStream logFile = new PrintStream(new File(logFilePath));
-            //     System.setOut(logFile);
-                
-            //     Simulator simulator = new Simulator(averageVehiclePerSegment, vehicleSpeedKMPH, fw);
-            //     simulator.run();
-            //     simulator.printStatistics(); 
+            //     sweep.addRun(averageVehiclePerSegment, vehicleSpeedKMPH);
             // }
-            fw.close();
+            sweep.run();
         } catch (IOException ioe) {
             System.err.println("IOException: " + ioe.getMessage());
         }
     }
-}
\ No newline at end of file
+}
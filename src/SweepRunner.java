@@ -0,0 +1,106 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+    Runs the grid of (vehicle density, average speed) points of a parameter sweep concurrently.
+    Every run gets its own copy of the configuration and its own log file, so runs share no state.
+    As many runs as there are cores are kept in flight and the cores are divided among them,
+    so a sweep of one point still uses every core inside the simulation.
+    Rows of plot.csv are written in grid order, each as soon as it and all the rows before it are done.
+*/
+public class SweepRunner {
+    static final String CSV_HEADER = "Average Vehicle Density\tAverage Vehicle Speed (km/h)\tRequests Generated\tRequests Serviced\tRequests Queued\tAverage Cluster Overhead (Ratio)\tClouds formed by RSU\tAverage Cloud Formation Time by RSU (ms)\tClouds formed Distributedly\tAverage Cloud Formation Time Distributedly (ms)\tLeader Change Count\n";
+
+    Config config;
+    String logDirectoryPath;
+    List<int[]> gridPoints; // {vehiclesPerSegment, averageVehicleSpeed}
+
+    public SweepRunner(Config config, String logDirectoryPath) {
+        this.config = config;
+        this.logDirectoryPath = logDirectoryPath;
+        this.gridPoints = new ArrayList<int[]>();
+    }
+
+    public void addRun(int vehiclesPerSegment, int averageVehicleSpeed) {
+        gridPoints.add(new int[] {vehiclesPerSegment, averageVehicleSpeed});
+    }
+
+    public void run() throws IOException {
+        new File(logDirectoryPath).mkdirs();
+        if (gridPoints.isEmpty()) return;
+
+        int coreCount = Runtime.getRuntime().availableProcessors();
+        int concurrentRuns = Math.min(gridPoints.size(), coreCount);
+        int workersPerRun = Math.max(1, Math.min(config.WORKER_THREAD_COUNT, coreCount / concurrentRuns));
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrentRuns);
+        CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(pool);
+        String[] csvRows = new String[gridPoints.size()];
+        Throwable[] failures = new Throwable[gridPoints.size()];
+        boolean[] done = new boolean[gridPoints.size()];
+
+        for (int i = 0; i < gridPoints.size(); i++) {
+            final int runIndex = i;
+            final Config runConfig = config.copy();
+            runConfig.WORKER_THREAD_COUNT = workersPerRun;
+            // A run reports its own index even when it fails, so the rows after it keep streaming
+            completion.submit(() -> {
+                try {
+                    csvRows[runIndex] = runSimulation(runConfig, gridPoints.get(runIndex));
+                } catch (Throwable t) {
+                    failures[runIndex] = t;
+                }
+                return runIndex;
+            });
+        }
+
+        try (FileWriter fw = new FileWriter(logDirectoryPath + "/plot.csv", true)) {
+            fw.write(CSV_HEADER);
+            fw.flush();
+            int nextRowToWrite = 0;
+            for (int i = 0; i < gridPoints.size(); i++) {
+                int runIndex = completion.take().get();
+                done[runIndex] = true;
+                while (nextRowToWrite < gridPoints.size() && done[nextRowToWrite]) {
+                    if (failures[nextRowToWrite] != null) {
+                        // A failed run has no row
+                        int[] gridPoint = gridPoints.get(nextRowToWrite);
+                        System.err.printf("Simulation with density %d and average speed %d failed:\n", gridPoint[0], gridPoint[1]);
+                        failures[nextRowToWrite].printStackTrace(System.err);
+                    }
+                    else {
+                        fw.write(csvRows[nextRowToWrite]);
+                    }
+                    nextRowToWrite++;
+                }
+                fw.flush();
+            }
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Sweep task failed outside its run", ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    String runSimulation(Config runConfig, int[] gridPoint) throws IOException {
+        String logFilePath = String.format("%s/%d_%d.log", logDirectoryPath, gridPoint[0], gridPoint[1]);
+        String traceFilePath = String.format("%s/%d_%d.trace", logDirectoryPath, gridPoint[0], gridPoint[1]);
+        try (Logger logFile = new Logger(runConfig, new FileOutputStream(logFilePath));
+             TraceRecorder trace = runConfig.TRACE_ENABLED ? new TraceRecorder(runConfig, traceFilePath) : null) {
+            Simulator simulator = new Simulator(runConfig, gridPoint[0], gridPoint[1], logFile, trace);
+            if (runConfig.METRICS_SAMPLE_INTERVAL <= 0) {
+                simulator.run();
+                return simulator.printStatistics();
+            }
+            String metricsFilePath = String.format("%s/%d_%d_metrics.csv", logDirectoryPath, gridPoint[0], gridPoint[1]);
+            try (MetricsSampler metrics = new MetricsSampler(simulator, new FileWriter(metricsFilePath))) {
+                simulator.setMetricsSampler(metrics);
+                simulator.run();
+                return simulator.printStatistics();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.*;
+
+// Hashed timing wheel of node wake-ups with one slot per ms. Entries beyond one
+// revolution stay in their slot until their round comes up. A node is only ever
+// due once per interval, its earliest pending wake-up wins.
+public class TimingWheel {
+    int mask;
+    int[][] slotNodes;
+    int[][] slotTimes;
+    int[] slotSizes;
+    int[] scheduledTime; // Earliest pending wake-up of each node
+
+    public TimingWheel(int slotCount, int nodeCount) {
+        assert (Integer.bitCount(slotCount) == 1) : "Timing wheel slot count must be a power of two";
+        this.mask = slotCount - 1;
+        this.slotNodes = new int[slotCount][8];
+        this.slotTimes = new int[slotCount][8];
+        this.slotSizes = new int[slotCount];
+        this.scheduledTime = new int[nodeCount];
+        Arrays.fill(scheduledTime, Integer.MAX_VALUE);
+    }
+
+    public void schedule(int node, int time) {
+        if (time >= scheduledTime[node]) return; // Already woken no later than time
+        scheduledTime[node] = time;
+        int slot = time & mask;
+        int size = slotSizes[slot];
+        if (size == slotNodes[slot].length) {
+            slotNodes[slot] = Arrays.copyOf(slotNodes[slot], 2 * size);
+            slotTimes[slot] = Arrays.copyOf(slotTimes[slot], 2 * size);
+        }
+        slotNodes[slot][size] = node;
+        slotTimes[slot][size] = time;
+        slotSizes[slot] = size + 1;
+    }
+
+    // Copies the nodes due at time into due and returns their count.
+    // Must be called for every time in increasing order.
+    public int pollDue(int time, int[] due) {
+        int slot = time & mask;
+        int[] nodes = slotNodes[slot];
+        int[] times = slotTimes[slot];
+        int dueCount = 0, kept = 0;
+        for (int i = 0; i < slotSizes[slot]; i++) {
+            int node = nodes[i];
+            if (times[i] > time) {
+                // Later round
+                nodes[kept] = node;
+                times[kept] = times[i];
+                kept++;
+            }
+            else if (scheduledTime[node] == time) {
+                scheduledTime[node] = Integer.MAX_VALUE;
+                due[dueCount++] = node;
+            }
+            // else superseded by an earlier wake-up
+        }
+        slotSizes[slot] = kept;
+        return dueCount;
+    }
+}
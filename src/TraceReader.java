@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.*;
+import java.util.zip.*;
+
+/*
+    Streams the records of a TraceRecorder file one block at a time.
+    Usage: while (reader.next()) { ... reader.getTime() ... }
+    Run as a program it prints event counts per packet type of the given trace files.
+*/
+public class TraceReader implements Closeable {
+    private static final TraceRecorder.EVENT_TYPE[] EVENT_TYPES = TraceRecorder.EVENT_TYPE.values();
+    private static final Config.PACKET_TYPE[] PACKET_TYPES = Config.PACKET_TYPE.values();
+
+    private final DataInputStream in;
+    private final Inflater inflater;
+    private byte[] compressed;
+    private byte[] block;
+    private IntBuffer blockRecords;
+    private int recordCount;
+    private int recordIndex;
+    private final int[] record;
+
+    public TraceReader(String path) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        if (in.readInt() != TraceRecorder.MAGIC) throw new IOException(path + " is not a trace file");
+        int version = in.readInt();
+        if (version != TraceRecorder.VERSION) throw new IOException("Unsupported trace version " + version);
+        if (in.readInt() != TraceRecorder.RECORD_INTS) throw new IOException("Unexpected trace record width");
+        this.inflater = new Inflater();
+        this.compressed = new byte[1 << 16];
+        this.block = new byte[0];
+        this.recordCount = 0;
+        this.recordIndex = 0;
+        this.record = new int[TraceRecorder.RECORD_INTS];
+    }
+
+    // Advances to the next record, false at the end of the trace
+    public boolean next() throws IOException {
+        while (recordIndex == recordCount) {
+            if (!readBlock()) return false;
+        }
+        blockRecords.get(record);
+        recordIndex++;
+        return true;
+    }
+
+    private boolean readBlock() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException eof) {
+            return false;
+        }
+        int count = in.readInt();
+        if (compressed.length < length) compressed = new byte[length];
+        in.readFully(compressed, 0, length);
+        int blockLength = count * TraceRecorder.RECORD_INTS * 4;
+        if (block.length < blockLength) block = new byte[blockLength];
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int inflated = 0;
+            while (inflated < blockLength && !inflater.finished()) {
+                inflated += inflater.inflate(block, inflated, blockLength - inflated);
+            }
+            if (inflated != blockLength) throw new IOException("Truncated trace block");
+        } catch (DataFormatException dfe) {
+            throw new IOException("Corrupt trace block", dfe);
+        }
+        blockRecords = ByteBuffer.wrap(block, 0, blockLength).asIntBuffer();
+        recordCount = count;
+        recordIndex = 0;
+        return true;
+    }
+
+    public int getTime() { return record[0]; }
+    public TraceRecorder.EVENT_TYPE getEvent() { return EVENT_TYPES[record[1] >>> 24]; }
+    // Null for cloud events
+    public Config.PACKET_TYPE getPacketType() {
+        int type = (record[1] >>> 16) & 0xFF;
+        return type == 0 ? null : PACKET_TYPES[type - 1];
+    }
+    public int getAppId() { return (short) record[1]; }
+    public int getEntityId() { return record[2]; }
+    public int getOtherId() { return record[3]; }
+    public int getValue() { return record[4]; }
+    public int getValue2() { return record[5]; }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String path : args) {
+            long[][] counts = new long[TraceRecorder.EVENT_TYPE.values().length][Config.PACKET_TYPE.values().length + 1];
+            long total = 0;
+            try (TraceReader reader = new TraceReader(path)) {
+                while (reader.next()) {
+                    Config.PACKET_TYPE type = reader.getPacketType();
+                    counts[reader.getEvent().ordinal()][type == null ? 0 : type.ordinal() + 1]++;
+                    total++;
+                }
+            }
+            System.out.println(path + ": " + total + " records");
+            for (TraceRecorder.EVENT_TYPE event : TraceRecorder.EVENT_TYPE.values()) {
+                long[] eventCounts = counts[event.ordinal()];
+                if (eventCounts[0] > 0) System.out.printf("%s\t%d\n", event, eventCounts[0]);
+                for (Config.PACKET_TYPE type : Config.PACKET_TYPE.values()) {
+                    if (eventCounts[type.ordinal() + 1] > 0) System.out.printf("%s\t%s\t%d\n", event, type, eventCounts[type.ordinal() + 1]);
+                }
+            }
+        }
+    }
+}
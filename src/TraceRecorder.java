@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+
+/*
+    Optional binary trace of packet and cloud events, read back with TraceReader.
+    Every record is RECORD_INTS ints wide:
+        time, event << 24 | (packet type + 1) << 16 | app id, entity id, other id, value, value2
+    Each thread fills its own block of records with plain array stores, a full block is handed
+    to a background thread that deflates it and appends it to a memory-mapped file.
+    A thread starts with a block of FIRST_BLOCK_RECORDS and each next block is twice as large,
+    up to TRACE_BLOCK_RECORDS, so the many short-lived, lightly recording threads of the ACTORS
+    engine hold little memory. Such threads hand back their records with releaseThread when done.
+    If writing fails, recording stops and close reports the trace as cut short.
+    File layout: MAGIC, VERSION, RECORD_INTS, then blocks of (compressed length, record count, data).
+    Blocks of different threads are interleaved, so records are not globally ordered by time.
+*/
+public class TraceRecorder implements Closeable {
+    static final int MAGIC = 0x56435452; // "VCTR"
+    static final int VERSION = 1;
+    static final int RECORD_INTS = 6;
+    static final int HEADER_BYTES = 12;
+    static final int MAP_WINDOW_BYTES = 16 << 20;
+    static final int FIRST_BLOCK_RECORDS = 32;
+
+    static enum EVENT_TYPE {
+        TRANSMIT,       // entity sender, other -1, value request id, value2 segment
+        RECEIVE,        // entity receiver, other sender, value request id, value2 generation time
+        CLOUD_FORMED,   // entity leader, other -1, value formation time, value2 1 if formed by RSU
+        WORK_DONE,      // entity worker, other leader, value request id, value2 work done
+        LEADER_CHANGED; // entity new leader, other old leader
+    }
+
+    private class Block {
+        final int[] records;
+        int count;
+
+        Block(int capacity) {
+            this.records = new int[capacity * RECORD_INTS];
+            this.count = 0;
+        }
+
+        int capacity() {
+            return records.length / RECORD_INTS;
+        }
+    }
+
+    // Block currently filled by one thread
+    private class Producer {
+        Block block;
+    }
+
+    private final int blockRecords;
+    private final ThreadLocal<Producer> localProducer; // Unset until the thread first records
+    private final Queue<Producer> producers;
+    private final Queue<Block> spareBlocks; // Written blocks of TRACE_BLOCK_RECORDS, smaller ones are dropped
+    private final BlockingQueue<Block> fullBlocks;
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile IOException failure; // Of the writer thread, nothing is recorded after it
+
+    // Only touched by the writer thread
+    private final FileChannel file;
+    private MappedByteBuffer window;
+    private long windowBase;
+    private long fileLength;
+    private final Deflater deflater;
+    private final ByteBuffer rawBuffer;
+    private byte[] compressed;
+
+    public TraceRecorder(Config config, String path) throws IOException {
+        this.blockRecords = config.TRACE_BLOCK_RECORDS;
+        this.producers = new ConcurrentLinkedQueue<Producer>();
+        this.spareBlocks = new ConcurrentLinkedQueue<Block>();
+        this.fullBlocks = new LinkedBlockingQueue<Block>();
+        this.localProducer = new ThreadLocal<Producer>();
+        this.file = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.windowBase = 0;
+        this.window = file.map(FileChannel.MapMode.READ_WRITE, windowBase, MAP_WINDOW_BYTES);
+        this.window.putInt(MAGIC).putInt(VERSION).putInt(RECORD_INTS);
+        this.fileLength = HEADER_BYTES;
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.rawBuffer = ByteBuffer.allocate(blockRecords * RECORD_INTS * 4);
+        this.compressed = new byte[rawBuffer.capacity() + 64];
+        this.closed = false;
+        this.writerThread = new Thread(this::writeLoop, "trace-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public void record(EVENT_TYPE event, int time, Config.PACKET_TYPE packetType, int appId, int entityId, int otherId, int value, int value2) {
+        if (failure != null) return;
+        Producer producer = localProducer.get();
+        if (producer == null) {
+            producer = new Producer();
+            producer.block = new Block(Math.min(FIRST_BLOCK_RECORDS, blockRecords));
+            producers.add(producer);
+            localProducer.set(producer);
+        }
+        Block block = producer.block;
+        int[] records = block.records;
+        int i = block.count * RECORD_INTS;
+        records[i] = time;
+        records[i + 1] = event.ordinal() << 24 | (packetType == null ? 0 : packetType.ordinal() + 1) << 16 | (appId & 0xFFFF);
+        records[i + 2] = entityId;
+        records[i + 3] = otherId;
+        records[i + 4] = value;
+        records[i + 5] = value2;
+        if (++block.count == block.capacity()) {
+            fullBlocks.add(block);
+            producer.block = nextBlock(Math.min(2 * block.capacity(), blockRecords));
+        }
+    }
+
+    private Block nextBlock(int capacity) {
+        Block spare = (capacity == blockRecords) ? spareBlocks.poll() : null;
+        return (spare != null) ? spare : new Block(capacity);
+    }
+
+    // Hands the records of the calling thread to the writer and forgets its block.
+    // Called by threads that are about to end, before close.
+    public void releaseThread() {
+        Producer producer = localProducer.get();
+        if (producer == null) return;
+        localProducer.remove();
+        producers.remove(producer);
+        if (producer.block.count > 0) fullBlocks.add(producer.block);
+    }
+
+    public void recordTransmit(Packet packet, int time, int segmentId) {
+        record(EVENT_TYPE.TRANSMIT, time, packet.type, packet.appId, packet.senderId, -1, packet.reqId, segmentId);
+    }
+
+    public void recordReceive(Packet packet, int time, int receiverId) {
+        record(EVENT_TYPE.RECEIVE, time, packet.type, packet.appId, receiverId, packet.senderId, packet.reqId, packet.genTime);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Block block = fullBlocks.poll(10, TimeUnit.MILLISECONDS);
+                if (block != null) {
+                    writeBlock(block);
+                    block.count = 0;
+                    if (block.capacity() == blockRecords) spareBlocks.add(block);
+                }
+                else if (closed) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioe) {
+            failure = ioe;
+            fullBlocks.clear();
+            System.err.println("IOException: " + ioe.getMessage() + ", trace recording stopped");
+        }
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        rawBuffer.clear();
+        rawBuffer.asIntBuffer().put(block.records, 0, block.count * RECORD_INTS);
+        deflater.reset();
+        deflater.setInput(rawBuffer.array(), 0, block.count * RECORD_INTS * 4);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        int needed = 8 + length;
+        if (fileLength + needed > windowBase + window.capacity()) {
+            windowBase = fileLength;
+            window = file.map(FileChannel.MapMode.READ_WRITE, windowBase, Math.max(MAP_WINDOW_BYTES, needed));
+        }
+        window.position((int) (fileLength - windowBase));
+        window.putInt(length).putInt(block.count).put(compressed, 0, length);
+        fileLength += needed;
+    }
+
+    // Must only be called once no other thread records anymore.
+    // Throws if writing failed, the blocks written until then are kept.
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        for (Producer producer : producers) {
+            if (producer.block.count > 0) fullBlocks.add(producer.block);
+        }
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        fullBlocks.clear();
+        deflater.end();
+        IOException cutShort = (failure == null) ? null : new IOException("Trace is cut short, writing it failed", failure);
+        try {
+            window.force();
+            window = null;
+            file.truncate(fileLength);
+        } catch (IOException ioe) {
+            if (cutShort == null) throw ioe;
+            cutShort.addSuppressed(ioe);
+        } finally {
+            file.close();
+        }
+        if (cutShort != null) throw cutShort;
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/*
+    Streams vehicle mobility and request arrivals from a CSV file sorted by time, with rows
+        time,vehicleId,position,speed     position in m, speed in m/s and negative towards ROAD_START
+        time,vehicleId,request,appId      request arrival
+    Times are in ms and vehicle ids start from 1, a .gz file is decompressed on the fly.
+    Rows are read one position update interval ahead and handed to the vehicles' ReplayTracks,
+    so memory does not grow with the length of the trace.
+*/
+public class TraceReplay implements Closeable {
+    Config config;
+    String path;
+    BufferedReader reader;
+    ReplayTrack[] tracks; // By vehicle id
+    int lineNumber;
+    int lastRowTime;
+    long skippedRowCount; // Rows of vehicles that are not simulated
+
+    // Row read but not yet dispatched
+    boolean hasPendingRow;
+    int rowTime;
+    int rowVehicleId;
+    boolean rowIsRequest;
+    float rowPosition;
+    float rowSpeed;
+    int rowAppId;
+
+    public TraceReplay(Config config, int vehicleCount) throws IOException {
+        this.config = config;
+        this.path = config.REPLAY_PATH;
+        InputStream in = new FileInputStream(path);
+        if (path.endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+        this.reader = new BufferedReader(new InputStreamReader(in), 1 << 16);
+        this.tracks = new ReplayTrack[vehicleCount + 1];
+        for (int i = 1; i <= vehicleCount; i++) {
+            tracks[i] = new ReplayTrack();
+        }
+        this.lineNumber = 0;
+        this.lastRowTime = Integer.MIN_VALUE;
+        this.skippedRowCount = 0;
+        this.hasPendingRow = false;
+    }
+
+    public ReplayTrack getTrack(int vehicleId) {
+        return tracks[vehicleId];
+    }
+
+    // Hands every row with time up to untilTime to its vehicle's track
+    public void dispatchUntil(int untilTime) throws IOException {
+        while (hasPendingRow || readRow()) {
+            if (rowTime > untilTime) return;
+            hasPendingRow = false;
+            if (rowVehicleId < 1 || rowVehicleId >= tracks.length) {
+                skippedRowCount++;
+                continue;
+            }
+            if (rowIsRequest) {
+                tracks[rowVehicleId].addArrival(rowTime, rowAppId);
+            }
+            else {
+                tracks[rowVehicleId].addSample(rowTime, rowPosition, rowSpeed);
+            }
+        }
+    }
+
+    private boolean readRow() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            // Blank lines, comments and the header
+            if (line.isEmpty() || !Character.isDigit(line.charAt(0))) continue;
+            String[] fields = line.split(",");
+            if (fields.length != 4) throw new IOException(path + ":" + lineNumber + ": expected 4 fields");
+            try {
+                rowTime = Integer.parseInt(fields[0].trim());
+                rowVehicleId = Integer.parseInt(fields[1].trim());
+                rowIsRequest = fields[2].trim().equals("request");
+                if (rowIsRequest) {
+                    rowAppId = Integer.parseInt(fields[3].trim());
+                    if (rowAppId < 0 || rowAppId >= config.APPLICATION_TYPE_COUNT) {
+                        throw new IOException(path + ":" + lineNumber + ": unknown application " + rowAppId);
+                    }
+                }
+                else {
+                    rowPosition = Float.parseFloat(fields[2].trim());
+                    rowSpeed = Float.parseFloat(fields[3].trim());
+                }
+            } catch (NumberFormatException nfe) {
+                throw new IOException(path + ":" + lineNumber + ": " + nfe.getMessage());
+            }
+            if (rowTime < lastRowTime) throw new IOException(path + ":" + lineNumber + ": rows are not sorted by time");
+            lastRowTime = rowTime;
+            hasPendingRow = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
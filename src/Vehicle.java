@@ -1,23 +1,21 @@
 import java.util.*;
-import java.util.concurrent.*;
 
-public class Vehicle implements Callable<Integer> {
+public class Vehicle implements Node {
     int id;
-    float position;
-    float speed;
-    float averageSpeed;
-    int direction;
-    int lastUpdated;
+    VehicleKinematics kinematics; // Position, speed and direction live there
+    int kinematicsIndex;
     int currentTime;
     Simulator simulatorRef;
+    Config config;
     Medium mediumRef;
     Map<Integer, Cloud> clouds;
     int channelId;
     Queue<Packet> transmitQueue;
     Queue<Packet> receiveQueue;
-    int readTillIndex;
+    Channel.ReadCursor readCursor;
     int backoffTime;
     int contentionWindowSize;
+    SplittableRandom random; // Stream of this entity only, split from the run seed
     
     class ProcessBlock {
         int appId;
@@ -30,7 +28,7 @@ public class Vehicle implements Callable<Integer> {
             if (currentTime > bookedTillTime) {
                 bookedTillTime = currentTime;
             }
-            bookedTillTime += donatedResources * Config.PROCESSING_SPEED;
+            bookedTillTime += donatedResources * config.PROCESSING_SPEED;
             this.appId = appId;
             this.reqId = reqId;
             this.workAmount = donatedResources;  
@@ -43,15 +41,16 @@ public class Vehicle implements Callable<Integer> {
     int pendingAppId;
     int pendingRequestGenTime;
     boolean hasPendingRequest;
+    ArrivalProcess arrivals;
+    ReplayTrack track; // Null unless replaying
 
     public Vehicle(int id, float averageSpeed, Simulator simulatorRef, Medium mediumRef) {
         this.id = id;        
-        this.position = ThreadLocalRandom.current().nextFloat() * Config.ROAD_END;
-        this.averageSpeed = averageSpeed;
-        this.speed = averageSpeed;
-        this.direction = ThreadLocalRandom.current().nextInt(2);
-        if (this.direction == 0) this.direction = -1; 
-        this.lastUpdated = 0;
+        this.config = simulatorRef.config;
+        this.random = simulatorRef.splitRandom();
+        float position = random.nextFloat() * config.ROAD_END;
+        int direction = random.nextInt(2);
+        if (direction == 0) direction = -1; 
         this.currentTime = 0;
         this.simulatorRef = simulatorRef;
         this.mediumRef = mediumRef;
@@ -59,63 +58,46 @@ public class Vehicle implements Callable<Integer> {
         this.channelId = 0;
         this.transmitQueue = new LinkedList<Packet>();
         this.receiveQueue = new LinkedList<Packet>();
-        this.readTillIndex = 0;
+        this.readCursor = mediumRef.channels[channelId].newReadCursor();
         this.bookedTillTime = 0;
         this.processQueue = new LinkedList<ProcessBlock>();
         this.backoffTime = 0;
-        this.contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
+        this.contentionWindowSize = config.CONTENTION_WINDOW_BASE;
         this.hasPendingRequest = false;
-        // System.out.println("Vehicle " + id + " initialised at position " + this.position);
-    } 
-
-    public boolean hasSegmentChanged(float oldPosition, float newPosition) {
-        int oldSegmentId = (int) (oldPosition / Config.SEGMENT_LENGTH);
-        int newSegmentId = (int) (newPosition / Config.SEGMENT_LENGTH);
-        return oldSegmentId != newSegmentId;
-    }
-
-    public void updatePosition() {
-        float newPosition = position + (direction * speed * (currentTime - lastUpdated)) / 1000;
-        if (newPosition > Config.ROAD_END) {
-            newPosition = Config.ROAD_END - 1;
-            direction = -1;
-        }
-        else if (newPosition < Config.ROAD_START) {
-            newPosition = Config.ROAD_START;
-            direction = 1;
+        if (simulatorRef.replay != null) {
+            this.track = simulatorRef.replay.getTrack(id);
+            this.arrivals = track;
         }
-        
-        // Send out RLEAVE's if vehicle is inside a new segment
-        if (hasSegmentChanged(position, newPosition)) {
-            clouds.forEach((appId, cloud) -> {
-                if (cloud != null && cloud.isMember(id)) {
-                    transmitQueue.add(
-                        new Packet(simulatorRef, Config.PACKET_TYPE.RLEAVE, id, currentTime, appId)
-                    );
-                }
-                if (cloud != null && cloud.isCloudLeader(id)) {
-                    simulatorRef.incrLeaderLeaveCount();
-                }
-            });
-            clouds.clear();
-            // Clear any pending requests
-            hasPendingRequest = false;
+        else {
+            this.arrivals = ArrivalProcess.create(config, random);
         }
-        position = newPosition;
+        this.kinematics = simulatorRef.kinematics;
+        this.kinematicsIndex = kinematics.add(position, averageSpeed, direction, random, track);
+        // System.out.println("Vehicle " + id + " initialised at position " + getPosition());
+    } 
 
-        float newSpeed;
-        do {
-            newSpeed = (float) ThreadLocalRandom.current().nextGaussian();
-            newSpeed = newSpeed * Config.VEHICLE_SPEED_STD_DEV + averageSpeed;
-        } while (newSpeed < Config.VEHICLE_SPEED_MIN || newSpeed > Config.VEHICLE_SPEED_MAX);
-        speed = newSpeed;
-        lastUpdated = currentTime;
-        return;
+    // Called by the simulator thread after the bulk position update at time has moved
+    // this vehicle into a new segment, where its clouds and pending request no longer hold
+    public void leaveSegment(int time) {
+        // Send out RLEAVE's
+        clouds.forEach((appId, cloud) -> {
+            if (cloud != null && cloud.isMember(id)) {
+                transmitQueue.add(
+                    new Packet(simulatorRef, Config.PACKET_TYPE.RLEAVE, id, time, appId)
+                );
+            }
+            if (cloud != null && cloud.isCloudLeader(id)) {
+                simulatorRef.incrLeaderLeaveCount();
+            }
+        });
+        clouds.clear();
+        // Clear any pending requests
+        hasPendingRequest = false;
     }
 
     private int getRandomChunkSize() {
-        int multiplier = ThreadLocalRandom.current().nextInt(Config.APPLICATION_TYPE_COUNT) + 1;
-        return Config.WORK_CHUNK_SIZE * multiplier;
+        int multiplier = random.nextInt(config.APPLICATION_TYPE_COUNT) + 1;
+        return config.WORK_CHUNK_SIZE * multiplier;
     }
 
     public void handleRREQ(Packet p) {
@@ -127,7 +109,7 @@ public class Vehicle implements Callable<Integer> {
 
         // Also send a RREP, if someone else's request
         if (p.senderId != id) {
-            Packet rrepPacket = new Packet(simulatorRef, Config.PACKET_TYPE.RREP, id, currentTime, direction * speed, p.appId, getRandomChunkSize());
+            Packet rrepPacket = new Packet(simulatorRef, Config.PACKET_TYPE.RREP, id, currentTime, getVelocity(), p.appId, getRandomChunkSize());
             transmitQueue.add(rrepPacket);
             handleRREP(rrepPacket);
         }
@@ -138,9 +120,9 @@ public class Vehicle implements Callable<Integer> {
         Cloud cloud = clouds.get(p.appId);
         if (cloud != null && cloud.isCloudLeader(id)) {
             cloud.addNewRequest(p);
-            Map<Integer, Map<Integer,Integer>> newWorkStore = cloud.processPendingRequests();
-            if (!newWorkStore.isEmpty()) {
-                Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, newWorkStore);
+            WorkAssignment newWorkAssignment = cloud.processPendingRequests();
+            if (!newWorkAssignment.isEmpty()) {
+                Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, newWorkAssignment);
                 transmitQueue.add(pstartPacket);
                 handlePSTART(pstartPacket);
             }
@@ -168,7 +150,7 @@ public class Vehicle implements Callable<Integer> {
         if (cloud != null && cloud.isCloudLeader(id)) {
             cloud.recordCloudFormed(currentTime);
             // cloud.printStats();
-            Map<Integer, Map<Integer,Integer>> workAssignment = cloud.processPendingRequests();
+            WorkAssignment workAssignment = cloud.processPendingRequests();
             Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, workAssignment);
             transmitQueue.add(pstartPacket);
             handlePSTART(pstartPacket); // honor self-contribution
@@ -176,13 +158,14 @@ public class Vehicle implements Callable<Integer> {
     }
     
     public void handlePSTART(Packet startPacket) {
-        startPacket.workAssignment.forEach((reqId, appWorkAssignment) -> {
-            int assignedWork = appWorkAssignment.getOrDefault(id, 0);
+        WorkAssignment workAssignment = startPacket.workAssignment;
+        for (int i = workAssignment.firstIndexOf(id); i < workAssignment.size() && workAssignment.getMemberId(i) == id; i++) {
+            int assignedWork = workAssignment.getAmount(i);
             if (assignedWork > 0) {
                 // Add an alarm for contribution
-                processQueue.add(new ProcessBlock(startPacket.appId, reqId, assignedWork));
+                processQueue.add(new ProcessBlock(startPacket.appId, workAssignment.getReqId(i), assignedWork));
             }
-        });
+        }
         return;
     }
 
@@ -191,13 +174,13 @@ public class Vehicle implements Callable<Integer> {
         if (cloud == null || !cloud.isCloudLeader(id)) return;
         cloud.markAsDone(donePacket.reqId, donePacket.senderId, donePacket.workDoneAmount);
         
-        Map<Integer, Map<Integer,Integer>> newWorkStore = cloud.processPendingRequests();
-        if (!newWorkStore.isEmpty()) {
-            Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, newWorkStore);
+        WorkAssignment newWorkAssignment = cloud.processPendingRequests();
+        if (!newWorkAssignment.isEmpty()) {
+            Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, newWorkAssignment);
             transmitQueue.add(pstartPacket);
             handlePSTART(pstartPacket);
         }
-        else if (cloud.globalWorkStore.isEmpty()) {
+        else if (cloud.workStore.isEmpty()) {
             Packet tearPacket = new Packet(simulatorRef, Config.PACKET_TYPE.RTEAR, id, currentTime, donePacket.appId);
             transmitQueue.add(tearPacket);
             clouds.remove(donePacket.appId);
@@ -215,7 +198,7 @@ public class Vehicle implements Callable<Integer> {
         }
         // Then reassign the left work
         if (cloud.isCloudLeader(id)) {
-            Map<Integer, Map<Integer,Integer>> workAssignment = cloud.reassignWork(packet.senderId);
+            WorkAssignment workAssignment = cloud.reassignWork(packet.senderId);
             Packet pstartPacket = new Packet(simulatorRef, Config.PACKET_TYPE.PSTART, id, currentTime, cloud.appId, workAssignment);
             transmitQueue.add(pstartPacket);
             handlePSTART(pstartPacket);
@@ -232,9 +215,9 @@ public class Vehicle implements Callable<Integer> {
                 Config.PACKET_TYPE.RJOIN,
                 id,
                 currentTime,
-                speed * direction,
+                getVelocity(),
                 pendingAppId,
-                Config.APPLICATION_REQUIREMENT[pendingAppId],
+                config.APPLICATION_REQUIREMENT[pendingAppId],
                 getRandomChunkSize()
             );
             transmitQueue.add(rjoinPacket);
@@ -246,9 +229,9 @@ public class Vehicle implements Callable<Integer> {
                 Config.PACKET_TYPE.RREQ,
                 id,
                 currentTime,
-                speed * direction,
+                getVelocity(),
                 pendingAppId,
-                Config.APPLICATION_REQUIREMENT[pendingAppId],
+                config.APPLICATION_REQUIREMENT[pendingAppId],
                 getRandomChunkSize()
             );
             clouds.put(reqPacket.appId, new Cloud(simulatorRef, reqPacket.appId, id, false, pendingRequestGenTime));
@@ -278,9 +261,9 @@ public class Vehicle implements Callable<Integer> {
                 Config.PACKET_TYPE.RREQ,
                 id,
                 currentTime,
-                speed * direction,
+                getVelocity(),
                 pendingAppId,
-                Config.APPLICATION_REQUIREMENT[pendingAppId],
+                config.APPLICATION_REQUIREMENT[pendingAppId],
                 getRandomChunkSize()
             );
             transmitQueue.add(rreqPacket);
@@ -291,9 +274,9 @@ public class Vehicle implements Callable<Integer> {
                 simulatorRef,
                 Config.PACKET_TYPE.RJOIN,
                 id, currentTime,
-                speed * direction,
+                getVelocity(),
                 pendingAppId,
-                Config.APPLICATION_REQUIREMENT[pendingAppId],
+                config.APPLICATION_REQUIREMENT[pendingAppId],
                 getRandomChunkSize()
             );
             transmitQueue.add(rjoinPacket);
@@ -311,45 +294,78 @@ public class Vehicle implements Callable<Integer> {
         }
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public float getPosition() {
+        return kinematics.positions[kinematicsIndex];
+    }
+
+    public float getVelocity() {
+        return kinematics.getVelocity(kinematicsIndex);
+    }
+
+    public void setCurrentTime(int time) {
+        currentTime = time;
+    }
+
+    public int getNextWakeTime() {
+        // Contend or count down backoff in every interval while packets are waiting
+        if (!transmitQueue.isEmpty()) return currentTime;
+        int wakeTime = (currentTime + config.POSITION_UPDATE_INTERVAL - 1) / config.POSITION_UPDATE_INTERVAL * config.POSITION_UPDATE_INTERVAL;
+        if (!processQueue.isEmpty()) {
+            wakeTime = Math.min(wakeTime, processQueue.peek().completionTime);
+        }
+        if (hasPendingRequest) {
+            wakeTime = Math.min(wakeTime, pendingRequestGenTime + config.MAX_RPRESENT_WAIT_TIME);
+        }
+        else {
+            wakeTime = Math.min(wakeTime, arrivals.getArrivalTime());
+        }
+        return Math.max(wakeTime, currentTime);
+    }
+
+    // Contend for the channel in this interval if a packet is waiting and backoff has expired
+    public void declareTransmitIntent() {
+        if (transmitQueue.isEmpty() || backoffTime > 0) return;
+        Channel targetChannel = mediumRef.channels[channelId];
+        targetChannel.declareTransmitIntent(id, getPosition(), random.nextInt());
+    }
+
     public Integer call() {
         // System.out.println("Vehicle " + id + " starting interval " + currentTime);
         Channel targetChannel = mediumRef.channels[channelId];
+        float position = getPosition();
 
+        // Attempt to transmit packets in transmitQueue only if there are any pending packets,
+        // contention for this interval was settled by the channel before any entity ran
         if (!transmitQueue.isEmpty()) {
-            if (targetChannel.isFree(id, position)) {
-                Packet packet = transmitQueue.poll();
-                targetChannel.transmitPacket(packet, currentTime, position);    
+            if (backoffTime == 0) {
+                if (targetChannel.hasWonContention(id, position)) {
+                    Packet packet = transmitQueue.poll();
+                    targetChannel.transmitPacket(packet, currentTime, position);
+                    // Reset contention window
+                    contentionWindowSize = config.CONTENTION_WINDOW_BASE;
+                }
+                else {
+                    contentionWindowSize *= 2;
+                    if (contentionWindowSize > config.CONTENTION_WINDOW_MAX) {
+                        if (simulatorRef.log.isEnabled(Config.LOG_LEVEL_TYPE.DEBUG)) {
+                            simulatorRef.log.debug("Vehicle %d could not transmit in backoff, retrying again", id);
+                        }
+                        backoffTime = 0;
+                        contentionWindowSize = config.CONTENTION_WINDOW_BASE;
+                    }
+                    else {
+                        backoffTime = random.nextInt(contentionWindowSize) + 1;
+                    }
+                }
+            }
+            else if (targetChannel.isFree(position)) {
+                backoffTime--;
             }
         }
-        // Attempt to transmit packets in transmitQueue only if there are any pending packets
-        // if (!transmitQueue.isEmpty()) {
-        //     if (backoffTime == 0) {
-        //         if (targetChannel.isFree(id, position)) {
-        //             Packet packet = transmitQueue.poll();
-        //             targetChannel.transmitPacket(packet, currentTime, position);    
-        //             targetChannel.stopTransmit(id);
-        //             // Reset contention window
-        //             contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
-        //         }
-        //         else {
-        //             contentionWindowSize *= 2;
-        //             if (contentionWindowSize > Config.CONTENTION_WINDOW_MAX) {
-        //                 System.out.println("Vehicle could not transmit in backoff, retrying again");
-        //                 backoffTime = 0;
-        //                 contentionWindowSize = Config.CONTENTION_WINDOW_BASE;
-        //             }
-        //             else {
-        //                 backoffTime = ThreadLocalRandom.current().nextInt(contentionWindowSize) + 1;
-        //             }
-        //         }
-        //     }
-        //     else {
-        //         if (targetChannel.isFree(id, position)) {
-        //             backoffTime--;
-        //             targetChannel.stopTransmit(id);
-        //         }
-        //     }
-        // }  
 
         // Put processed work done (if any) to transmitQueue
         while (!processQueue.isEmpty()) {
@@ -367,26 +383,27 @@ public class Vehicle implements Callable<Integer> {
         }
 
         if (hasPendingRequest) {
-            // Wait Config.MAX_WAIT_TIME for a RQUEUE message, if received OK, else self-initiate
-            if (currentTime >= pendingRequestGenTime + Config.MAX_RPRESENT_WAIT_TIME) {
+            // Wait config.MAX_WAIT_TIME for a RQUEUE message, if received OK, else self-initiate
+            if (currentTime >= pendingRequestGenTime + config.MAX_RPRESENT_WAIT_TIME) {
                 selfInitiateCloudFormation();
                 hasPendingRequest = false;
             }
         } 
-        else {
-            // (Randomly) Request for an application
-            int hasRequest = ThreadLocalRandom.current().nextInt(Config.INV_RREQ_PROB);
-            int appId = ThreadLocalRandom.current().nextInt(Config.APPLICATION_TYPE_COUNT);
-            if (hasRequest == 1) {
+        else if (currentTime >= arrivals.getArrivalTime()) {
+            // (Randomly) Request for an application, arrivals that fell while a request was pending are dropped
+            boolean hasRequest = (currentTime == arrivals.getArrivalTime());
+            int appId = arrivals.getAppId();
+            arrivals.advance(currentTime);
+            if (hasRequest) {
                 if (clouds.get(appId) != null) {
                     Packet rjoinPacket = new Packet(
                         simulatorRef,
                         Config.PACKET_TYPE.RJOIN,
                         id,
                         currentTime,
-                        speed * direction,
+                        getVelocity(),
                         appId,
-                        Config.APPLICATION_REQUIREMENT[pendingAppId],
+                        config.APPLICATION_REQUIREMENT[pendingAppId],
                         getRandomChunkSize()
                     );
                     transmitQueue.add(rjoinPacket);
@@ -406,8 +423,7 @@ public class Vehicle implements Callable<Integer> {
         }
 
         // Also get and process receivedPackets
-        int newPacketCount = targetChannel.receivePackets(id, readTillIndex, currentTime, position, receiveQueue); 
-        readTillIndex += newPacketCount;
+        targetChannel.receivePackets(id, readCursor, currentTime, position, receiveQueue);
         while (!receiveQueue.isEmpty()) {
             Packet p = receiveQueue.poll();
             assert p != null : "Read packet is NULL";      
@@ -444,11 +460,10 @@ public class Vehicle implements Callable<Integer> {
                     handleRPRESENT(p);
                     break;
                 default:
-                    System.out.println("Unhandled packet type " + p.type);
+                    simulatorRef.log.warn("Unhandled packet type %s", p.type);
                     break;
             }
         }
-        if (currentTime % 50 == 0) updatePosition();
         return (++currentTime);
     }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+import java.util.*;
+
+// Kinematic state of every vehicle in parallel arrays, indexed by vehicle id - 1.
+// All vehicles move in one bulk pass per position update, run by the simulator thread
+// after every node has run the interval, which leaves the vehicles that crossed into
+// another segment in changedVehicles.
+// The dead reckoning runs through the Vector API when the vector build is run with the
+// jdk.incubator.vector module, see VectorDeadReckoning, and as a scalar loop otherwise.
+public class VehicleKinematics {
+    // Moves every vehicle to its position at currentTime, reflecting it at the road ends
+    interface DeadReckoning {
+        void move(VehicleKinematics kinematics, int currentTime);
+    }
+
+    static final DeadReckoning SCALAR = (kinematics, currentTime) -> kinematics.moveScalar(0, kinematics.count, currentTime);
+    static final DeadReckoning VECTOR = loadVectorDeadReckoning(); // Null unless available
+
+    Config config;
+    int count;
+    float[] positions;
+    float[] speeds;
+    float[] averageSpeeds;
+    int[] directions;
+    int[] lastUpdated;
+    SplittableRandom[] randoms; // Each vehicle's own stream
+    ReplayTrack[] tracks; // Null entries unless replaying
+    DeadReckoning deadReckoning;
+
+    float[] newPositions; // Scratch space of the bulk pass
+    int[] changedVehicles; // Indices of the vehicles that changed segment in the last pass
+    int changedCount;
+
+    public VehicleKinematics(Config config, int capacity) {
+        this.config = config;
+        this.count = 0;
+        this.positions = new float[capacity];
+        this.speeds = new float[capacity];
+        this.averageSpeeds = new float[capacity];
+        this.directions = new int[capacity];
+        this.lastUpdated = new int[capacity];
+        this.randoms = new SplittableRandom[capacity];
+        this.tracks = new ReplayTrack[capacity];
+        this.newPositions = new float[capacity];
+        this.changedVehicles = new int[capacity];
+        this.changedCount = 0;
+        this.deadReckoning = (VECTOR != null) ? VECTOR : SCALAR;
+    }
+
+    // VectorDeadReckoning is only compiled into the vector build, and only loads when the
+    // runtime was started with the module. It is looked up next to this class, which the
+    // JMH build moves into a package.
+    private static DeadReckoning loadVectorDeadReckoning() {
+        String name = VehicleKinematics.class.getName().replace("VehicleKinematics", "VectorDeadReckoning");
+        try {
+            return (DeadReckoning) Class.forName(name).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // Registers a vehicle at the next index, vehicles are added in id order
+    public int add(float position, float averageSpeed, int direction, SplittableRandom random, ReplayTrack track) {
+        int index = count++;
+        positions[index] = position;
+        speeds[index] = averageSpeed;
+        averageSpeeds[index] = averageSpeed;
+        directions[index] = direction;
+        lastUpdated[index] = 0;
+        randoms[index] = random;
+        tracks[index] = track;
+        if (track != null && track.pollSample(0)) positions[index] = followTrack(index);
+        return index;
+    }
+
+    public float getVelocity(int index) {
+        return directions[index] * speeds[index];
+    }
+
+    // Take speed and direction from the latest replayed sample, returns its position
+    private float followTrack(int index) {
+        ReplayTrack track = tracks[index];
+        directions[index] = (track.speed < 0) ? -1 : 1;
+        speeds[index] = Math.abs(track.speed);
+        lastUpdated[index] = track.time;
+        return Math.max(config.ROAD_START, Math.min(config.ROAD_END - 1, track.position));
+    }
+
+    // Moves every vehicle to its position at currentTime and draws its speed for the next period
+    public void update(int currentTime) {
+        float segmentLength = config.SEGMENT_LENGTH;
+        System.arraycopy(positions, 0, newPositions, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (tracks[i] != null && tracks[i].pollSample(currentTime)) newPositions[i] = followTrack(i);
+        }
+
+        deadReckoning.move(this, currentTime);
+
+        changedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if ((int) (positions[i] / segmentLength) != (int) (newPositions[i] / segmentLength)) {
+                changedVehicles[changedCount++] = i;
+            }
+        }
+        System.arraycopy(newPositions, 0, positions, 0, count);
+
+        // A replayed vehicle keeps its speed until the next sample
+        for (int i = 0; i < count; i++) {
+            if (tracks[i] != null) continue;
+            float newSpeed;
+            do {
+                newSpeed = (float) randoms[i].nextGaussian();
+                newSpeed = newSpeed * config.VEHICLE_SPEED_STD_DEV + averageSpeeds[i];
+            } while (newSpeed < config.VEHICLE_SPEED_MIN || newSpeed > config.VEHICLE_SPEED_MAX);
+            speeds[i] = newSpeed;
+        }
+    }
+
+    // Dead reckoning of the vehicles from index from up to to, the reference VectorDeadReckoning matches
+    void moveScalar(int from, int to, int currentTime) {
+        float roadStart = config.ROAD_START;
+        float roadEnd = config.ROAD_END;
+        for (int i = from; i < to; i++) {
+            float newPosition = newPositions[i] + (directions[i] * speeds[i] * (currentTime - lastUpdated[i])) / 1000;
+            boolean beyondEnd = newPosition > roadEnd;
+            boolean beforeStart = newPosition < roadStart;
+            newPositions[i] = beyondEnd ? roadEnd - 1 : (beforeStart ? roadStart : newPosition);
+            directions[i] = beyondEnd ? -1 : (beforeStart ? 1 : directions[i]);
+            lastUpdated[i] = currentTime;
+        }
+    }
+}
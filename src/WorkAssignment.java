@@ -0,0 +1,98 @@
+import java.util.*;
+
+// Immutable payload of a PSTART packet, the (member id, request id, amount) entries of the work
+// assigned in one go. Entries are sorted by member id and then request id in three int arrays,
+// so every receiver of the shared packet finds its own entries by binary search.
+public class WorkAssignment {
+    static final WorkAssignment EMPTY = new WorkAssignment(new int[0], new int[0], new int[0]);
+
+    private final int[] memberIds;
+    private final int[] reqIds;
+    private final int[] amounts;
+
+    private WorkAssignment(int[] memberIds, int[] reqIds, int[] amounts) {
+        this.memberIds = memberIds;
+        this.reqIds = reqIds;
+        this.amounts = amounts;
+    }
+
+    public int size() {
+        return memberIds.length;
+    }
+
+    public boolean isEmpty() {
+        return memberIds.length == 0;
+    }
+
+    // Index of the first entry of member, entries from there on belong to it while getMemberId matches
+    public int firstIndexOf(int memberId) {
+        int low = 0, high = memberIds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (memberIds[middle] < memberId) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    public int getMemberId(int index) {
+        return memberIds[index];
+    }
+
+    public int getReqId(int index) {
+        return reqIds[index];
+    }
+
+    public int getAmount(int index) {
+        return amounts[index];
+    }
+
+    // Collects entries in increasing request id order, reused by a cloud leader for every packet
+    static class Builder {
+        private int[] memberIds;
+        private int[] reqIds;
+        private int[] amounts;
+        private long[] order; // Member id above entry index
+        private int count;
+
+        Builder() {
+            this.memberIds = new int[8];
+            this.reqIds = new int[8];
+            this.amounts = new int[8];
+            this.order = new long[8];
+            this.count = 0;
+        }
+
+        void add(int memberId, int reqId, int amount) {
+            if (count == memberIds.length) {
+                memberIds = Arrays.copyOf(memberIds, 2 * count);
+                reqIds = Arrays.copyOf(reqIds, 2 * count);
+                amounts = Arrays.copyOf(amounts, 2 * count);
+                order = Arrays.copyOf(order, 2 * count);
+            }
+            memberIds[count] = memberId;
+            reqIds[count] = reqId;
+            amounts[count] = amount;
+            order[count] = ((long) memberId << 32) | count;
+            count++;
+        }
+
+        // Takes the collected entries and leaves the builder empty
+        WorkAssignment build() {
+            if (count == 0) return EMPTY;
+            // Sorting by entry index within a member keeps its request ids increasing
+            Arrays.sort(order, 0, count);
+            int[] sortedMemberIds = new int[count];
+            int[] sortedReqIds = new int[count];
+            int[] sortedAmounts = new int[count];
+            for (int i = 0; i < count; i++) {
+                int entry = (int) order[i];
+                sortedMemberIds[i] = memberIds[entry];
+                sortedReqIds[i] = reqIds[entry];
+                sortedAmounts[i] = amounts[entry];
+            }
+            count = 0;
+            return new WorkAssignment(sortedMemberIds, sortedReqIds, sortedAmounts);
+        }
+    }
+}
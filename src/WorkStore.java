@@ -0,0 +1,208 @@
+import java.util.*;
+
+// Outstanding work of a cloud's in-flight requests. Each request keeps its workers and
+// their amounts in compact int arrays, and each member the ids of the requests it works on,
+// so completing work costs the size of one request and a leaving member the size of its own work.
+// Nothing is allocated once the arrays have grown to the cloud's size.
+public class WorkStore {
+    private static class RequestWork {
+        int reqId;
+        int[] workerIds;
+        int[] amounts;
+        int count;
+
+        RequestWork() {
+            this.workerIds = new int[4];
+            this.amounts = new int[4];
+        }
+
+        int indexOf(int workerId) {
+            for (int i = 0; i < count; i++) {
+                if (workerIds[i] == workerId) return i;
+            }
+            return -1;
+        }
+    }
+
+    // Requests are dense in [0, requestCount), released ones are kept after them for reuse
+    private RequestWork[] requests;
+    private int requestCount;
+    private final IntIntHashMap requestSlots; // Request id to index in requests
+
+    // Members with work are dense in [0, memberCount)
+    private int[] memberIds;
+    private int[][] memberRequests; // Request ids a member works on
+    private int[] memberRequestCounts;
+    private int memberCount;
+    private final IntIntHashMap memberSlots; // Member id to index in memberIds
+
+    public WorkStore() {
+        this.requests = new RequestWork[4];
+        this.requestCount = 0;
+        this.requestSlots = new IntIntHashMap(4, -1);
+        this.memberIds = new int[8];
+        this.memberRequests = new int[8][];
+        this.memberRequestCounts = new int[8];
+        this.memberCount = 0;
+        this.memberSlots = new IntIntHashMap(8, -1);
+    }
+
+    public boolean isEmpty() {
+        return requestCount == 0;
+    }
+
+    public boolean containsRequest(int reqId) {
+        return requestSlots.containsKey(reqId);
+    }
+
+    // Outstanding work of worker on request, -1 if it has none
+    public int getWork(int reqId, int workerId) {
+        int slot = requestSlots.get(reqId);
+        if (slot < 0) return -1;
+        RequestWork request = requests[slot];
+        int index = request.indexOf(workerId);
+        return index < 0 ? -1 : request.amounts[index];
+    }
+
+    // Starts tracking a request, work is added to it with addWork
+    public void addRequest(int reqId) {
+        assert !containsRequest(reqId);
+        if (requestCount == requests.length) {
+            requests = Arrays.copyOf(requests, requestCount * 2);
+        }
+        if (requests[requestCount] == null) requests[requestCount] = new RequestWork();
+        RequestWork request = requests[requestCount];
+        request.reqId = reqId;
+        request.count = 0;
+        requestSlots.put(reqId, requestCount++);
+    }
+
+    public void addWork(int reqId, int workerId, int amount) {
+        RequestWork request = requests[requestSlots.get(reqId)];
+        int index = request.indexOf(workerId);
+        if (index >= 0) {
+            request.amounts[index] += amount;
+            return;
+        }
+        if (request.count == request.workerIds.length) {
+            request.workerIds = Arrays.copyOf(request.workerIds, request.count * 2);
+            request.amounts = Arrays.copyOf(request.amounts, request.count * 2);
+        }
+        request.workerIds[request.count] = workerId;
+        request.amounts[request.count] = amount;
+        request.count++;
+        addMemberRequest(workerId, reqId);
+    }
+
+    // Takes amount off worker's work on request, returns true if that completed the request
+    public boolean subtractWork(int reqId, int workerId, int amount) {
+        int slot = requestSlots.get(reqId);
+        RequestWork request = requests[slot];
+        int index = request.indexOf(workerId);
+        assert index >= 0 && request.amounts[index] >= amount;
+        request.amounts[index] -= amount;
+        if (request.amounts[index] > 0) return false;
+        removeWorker(request, index);
+        removeMemberRequest(workerId, reqId);
+        if (request.count > 0) return false;
+        removeRequest(slot);
+        return true;
+    }
+
+    // Drops all work of member. Its request ids and amounts are written to the given arrays
+    // in increasing request id order, which must have room for getRequestCount(memberId) entries.
+    // A request left without workers stays in flight.
+    public int removeMember(int memberId, int[] reqIds, int[] amounts) {
+        int memberSlot = memberSlots.get(memberId);
+        if (memberSlot < 0) return 0;
+        int count = memberRequestCounts[memberSlot];
+        System.arraycopy(memberRequests[memberSlot], 0, reqIds, 0, count);
+        Arrays.sort(reqIds, 0, count);
+        for (int i = 0; i < count; i++) {
+            RequestWork request = requests[requestSlots.get(reqIds[i])];
+            int index = request.indexOf(memberId);
+            amounts[i] = request.amounts[index];
+            removeWorker(request, index);
+        }
+        removeMemberSlot(memberSlot);
+        return count;
+    }
+
+    public int getRequestCount(int memberId) {
+        int memberSlot = memberSlots.get(memberId);
+        return memberSlot < 0 ? 0 : memberRequestCounts[memberSlot];
+    }
+
+    public void appendRequest(StringBuilder message, int reqId) {
+        RequestWork request = requests[requestSlots.get(reqId)];
+        message.append("Request ").append(reqId).append(" with ").append(request.count).append(" workers: ");
+        for (int i = 0; i < request.count; i++) {
+            message.append(request.workerIds[i]).append('(').append(request.amounts[i]).append(") ");
+        }
+    }
+
+    private void removeWorker(RequestWork request, int index) {
+        request.count--;
+        request.workerIds[index] = request.workerIds[request.count];
+        request.amounts[index] = request.amounts[request.count];
+    }
+
+    private void removeRequest(int slot) {
+        RequestWork request = requests[slot];
+        requestSlots.remove(request.reqId);
+        requestCount--;
+        if (slot == requestCount) return;
+        requests[slot] = requests[requestCount];
+        requests[requestCount] = request;
+        requestSlots.put(requests[slot].reqId, slot);
+    }
+
+    private void addMemberRequest(int memberId, int reqId) {
+        int memberSlot = memberSlots.get(memberId);
+        if (memberSlot < 0) {
+            if (memberCount == memberIds.length) {
+                memberIds = Arrays.copyOf(memberIds, memberCount * 2);
+                memberRequests = Arrays.copyOf(memberRequests, memberCount * 2);
+                memberRequestCounts = Arrays.copyOf(memberRequestCounts, memberCount * 2);
+            }
+            memberSlot = memberCount++;
+            memberIds[memberSlot] = memberId;
+            if (memberRequests[memberSlot] == null) memberRequests[memberSlot] = new int[4];
+            memberRequestCounts[memberSlot] = 0;
+            memberSlots.put(memberId, memberSlot);
+        }
+        int count = memberRequestCounts[memberSlot];
+        if (count == memberRequests[memberSlot].length) {
+            memberRequests[memberSlot] = Arrays.copyOf(memberRequests[memberSlot], count * 2);
+        }
+        memberRequests[memberSlot][count] = reqId;
+        memberRequestCounts[memberSlot]++;
+    }
+
+    private void removeMemberRequest(int memberId, int reqId) {
+        int memberSlot = memberSlots.get(memberId);
+        int[] reqIds = memberRequests[memberSlot];
+        int count = memberRequestCounts[memberSlot];
+        for (int i = 0; i < count; i++) {
+            if (reqIds[i] == reqId) {
+                reqIds[i] = reqIds[--count];
+                break;
+            }
+        }
+        memberRequestCounts[memberSlot] = count;
+        if (count == 0) removeMemberSlot(memberSlot);
+    }
+
+    private void removeMemberSlot(int memberSlot) {
+        memberSlots.remove(memberIds[memberSlot]);
+        memberCount--;
+        if (memberSlot == memberCount) return;
+        // Move the last member into the hole and keep the freed array for reuse
+        int[] freed = memberRequests[memberSlot];
+        memberIds[memberSlot] = memberIds[memberCount];
+        memberRequests[memberSlot] = memberRequests[memberCount];
+        memberRequestCounts[memberSlot] = memberRequestCounts[memberCount];
+        memberRequests[memberCount] = freed;
+        memberSlots.put(memberIds[memberSlot], memberSlot);
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.*;
+
+/*
+    Checks the long-run request rate of the arrival processes of a vehicle that takes every arrival.
+    Usage: java ArrivalProcessTest, exits with a non-zero status on the first failure.
+*/
+public class ArrivalProcessTest {
+    static final int HORIZON = 1_000_000_000; // ms
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    // Requests per ms over HORIZON, taking each one in the interval it arrives
+    static double empiricalRate(Config config) {
+        ArrivalProcess arrivals = ArrivalProcess.create(config, new SplittableRandom(config.RANDOM_SEED));
+        long count = 0;
+        int previous = -1;
+        while (arrivals.getArrivalTime() < HORIZON) {
+            int time = arrivals.getArrivalTime();
+            check(time > previous, "Arrival at " + time + " after " + previous);
+            previous = time;
+            count++;
+            arrivals.advance(time);
+        }
+        return (double) count / HORIZON;
+    }
+
+    // At most one request per interval, so a state of rate r requests in an interval with
+    // probability 1 - e^-r. Each state is weighted by its share of time.
+    static double expectedBurstyRate(Config config) {
+        double[] sojourns = config.BURSTY_MEAN_SOJOURN;
+        double rate = 0;
+        for (int state = 0; state < 2; state++) {
+            rate += sojourns[state] / (sojourns[0] + sojourns[1]) * -Math.expm1(-config.BURSTY_REQUEST_RATE[state]);
+        }
+        return rate;
+    }
+
+    static void checkRate(String name, double rate, double expected) {
+        check(Math.abs(rate - expected) <= 0.02 * expected,
+            String.format("%s rate %.6f per ms, expected %.6f", name, rate, expected));
+    }
+
+    static void bursty() {
+        Config config = new Config();
+        config.ARRIVAL_PROCESS = Config.ARRIVAL_TYPE.BURSTY;
+        checkRate("BURSTY", empiricalRate(config), expectedBurstyRate(config));
+
+        // Rates high enough that rounding arrivals to intervals matters
+        config.BURSTY_REQUEST_RATE = new double[] {0.01, 0.2};
+        config.BURSTY_MEAN_SOJOURN = new double[] {900, 100};
+        checkRate("BURSTY at high rates", empiricalRate(config), expectedBurstyRate(config));
+    }
+
+    static void geometric() {
+        Config config = new Config();
+        config.ARRIVAL_PROCESS = Config.ARRIVAL_TYPE.GEOMETRIC;
+        checkRate("GEOMETRIC", empiricalRate(config), 1.0 / config.INV_RREQ_PROB);
+    }
+
+    public static void main(String[] args) {
+        bursty();
+        geometric();
+        System.out.println("ArrivalProcessTest passed");
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.*;
+
+/*
+    Checks that the Vector API dead reckoning gives bit for bit the positions and directions
+    of the scalar loop, vehicles reflected at either road end included.
+    Usage: java --add-modules jdk.incubator.vector DeadReckoningTest, with the vector build,
+    otherwise there is nothing to check. Exits with a non-zero status on the first failure.
+*/
+public class DeadReckoningTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    // Vehicles spread over the whole road, fast enough that many cross an end
+    static VehicleKinematics newKinematics(Config config, int count, SplittableRandom random) {
+        VehicleKinematics kinematics = new VehicleKinematics(config, count);
+        for (int i = 0; i < count; i++) {
+            float position = config.ROAD_START + random.nextFloat() * (config.ROAD_END - config.ROAD_START);
+            kinematics.add(position, 0, random.nextBoolean() ? 1 : -1, random.split(), null);
+            kinematics.speeds[i] = random.nextFloat() * 400000;
+            kinematics.lastUpdated[i] = -random.nextInt(50);
+        }
+        System.arraycopy(kinematics.positions, 0, kinematics.newPositions, 0, count);
+        return kinematics;
+    }
+
+    public static void main(String[] args) {
+        if (VehicleKinematics.VECTOR == null) {
+            System.out.println("DeadReckoningTest skipped, run the vector build with --add-modules jdk.incubator.vector");
+            return;
+        }
+        Config config = new Config();
+        for (int count : new int[] {0, 1, 7, 8, 15, 16, 17, 1000, 1003}) {
+            long seed = config.RANDOM_SEED + count;
+            VehicleKinematics scalar = newKinematics(config, count, new SplittableRandom(seed));
+            VehicleKinematics vector = newKinematics(config, count, new SplittableRandom(seed));
+            for (int time = 0; time < 5; time++) {
+                VehicleKinematics.SCALAR.move(scalar, time);
+                VehicleKinematics.VECTOR.move(vector, time);
+                for (int i = 0; i < count; i++) {
+                    check(Float.floatToRawIntBits(scalar.newPositions[i]) == Float.floatToRawIntBits(vector.newPositions[i]),
+                        "Position of vehicle " + i + " of " + count + " at " + time + ": " + scalar.newPositions[i] + " and " + vector.newPositions[i]);
+                    check(scalar.directions[i] == vector.directions[i], "Direction of vehicle " + i + " of " + count + " at " + time);
+                    check(scalar.lastUpdated[i] == vector.lastUpdated[i], "Update time of vehicle " + i + " of " + count + " at " + time);
+                }
+            }
+        }
+        System.out.println("DeadReckoningTest passed");
+    }
+}
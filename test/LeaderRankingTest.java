@@ -0,0 +1,95 @@
+import java.util.*;
+
+/*
+    Checks LeaderRanking.getBest against a brute force ranking of the members.
+    Usage: java LeaderRankingTest, exits with a non-zero status on the first failure.
+*/
+public class LeaderRankingTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    // Member with the lowest LQI other than excludedId, ties going to the earlier joiner,
+    // from members and velocities in join order
+    static int bruteForceBest(List<Integer> ids, List<Float> velocities, int excludedId) {
+        int best = LeaderRanking.NO_MEMBER;
+        double bestLQI = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if (ids.get(i) == excludedId) continue;
+            double LQI = 0;
+            for (float velocity : velocities) {
+                LQI += Math.abs((double) velocities.get(i) - velocity);
+            }
+            if (best == LeaderRanking.NO_MEMBER || LQI < bestLQI) {
+                best = ids.get(i);
+                bestLQI = LQI;
+            }
+        }
+        return best;
+    }
+
+    // Every member at the median velocity, the first joiner ranks furthest from the median
+    static void sameVelocity() {
+        LeaderRanking ranking = new LeaderRanking();
+        for (int id = 1; id <= 9; id++) {
+            ranking.add(id, 15.0f);
+        }
+        check(ranking.getBest(LeaderRanking.NO_MEMBER) == 1, "Earliest of equal velocities");
+        check(ranking.getBest(1) == 2, "Earliest of equal velocities after the excluded one");
+    }
+
+    // A run of duplicates of the median velocity between slower and faster members
+    static void duplicateMedian() {
+        LeaderRanking ranking = new LeaderRanking();
+        ranking.add(1, 5.0f);
+        ranking.add(2, 25.0f);
+        for (int id = 3; id <= 8; id++) {
+            ranking.add(id, 12.0f);
+        }
+        ranking.add(9, 11.0f);
+        ranking.add(10, 30.0f);
+        check(ranking.getBest(LeaderRanking.NO_MEMBER) == 3, "Earliest joiner at the median velocity");
+        ranking.remove(3);
+        check(ranking.getBest(LeaderRanking.NO_MEMBER) == 4, "Next joiner at the median velocity");
+        check(ranking.getBest(4) == 5, "Next joiner when the earliest is excluded");
+    }
+
+    // Random joins and leaves with few distinct velocities, so ties are common. Velocities
+    // are whole numbers, so every LQI is exact and ties are compared exactly.
+    static void randomised() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            LeaderRanking ranking = new LeaderRanking();
+            List<Integer> ids = new ArrayList<Integer>();
+            List<Float> velocities = new ArrayList<Float>();
+            for (int step = 0; step < 200; step++) {
+                if (ids.isEmpty() || random.nextInt(3) > 0) {
+                    int id = random.nextInt(500) + 1;
+                    if (ids.contains(id)) continue;
+                    float velocity = (random.nextBoolean() ? -1 : 1) * (10 + random.nextInt(4));
+                    ids.add(id);
+                    velocities.add(velocity);
+                    ranking.add(id, velocity);
+                }
+                else {
+                    int i = random.nextInt(ids.size());
+                    ranking.remove(ids.remove(i));
+                    velocities.remove(i);
+                }
+                check(ranking.size() == ids.size(), "Size after step " + step);
+                int excludedId = (ids.isEmpty() || random.nextBoolean()) ? LeaderRanking.NO_MEMBER : ids.get(random.nextInt(ids.size()));
+                int expected = bruteForceBest(ids, velocities, excludedId);
+                int best = ranking.getBest(excludedId);
+                check(best == expected, "Trial " + trial + " step " + step + ": best " + best + ", expected " + expected);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        sameVelocity();
+        duplicateMedian();
+        randomised();
+        System.out.println("LeaderRankingTest passed");
+    }
+}